@@ -0,0 +1,174 @@
+package yaprnn.dvv;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+/**
+ * Compares the import of the AIFF files of a directory, e.g. the vowel set,
+ * before and after the spectrum of {@link AiffSound} was changed to a
+ * half-spectrum transform with shared plans. The samples are read once, so
+ * the benchmarks only measure the computation of the spectra. main() prints
+ * the import times and how far the spectra of both versions differ.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AiffImportBenchmark {
+
+	@Param( { "vokale/data" })
+	public String directory;
+
+	private List<short[]> samples;
+
+	@Setup
+	public void setUp() throws Exception {
+		samples = readSamples(directory);
+	}
+
+	@Benchmark
+	public int importBefore() {
+		int bins = 0;
+		for (short[] s : samples)
+			bins += spectrumBefore(s).length;
+		return bins;
+	}
+
+	@Benchmark
+	public int importAfter() {
+		int bins = 0;
+		for (short[] s : samples)
+			bins += ((double[]) new AiffSound(s, "a", "a.aiff")
+					.previewRawData()).length;
+		return bins;
+	}
+
+	/**
+	 * Reads the samples of all AIFF files of a directory like
+	 * AiffSound.readFromFile.
+	 */
+	private static List<short[]> readSamples(String directory)
+			throws Exception {
+		File[] files = new File(directory).listFiles();
+		if (files == null)
+			throw new IllegalArgumentException("No such directory: "
+					+ directory);
+		Arrays.sort(files);
+		List<short[]> result = new ArrayList<short[]>(files.length);
+		for (File file : files) {
+			if (!file.getName().endsWith(".aiff"))
+				continue;
+			AudioInputStream in = AudioSystem.getAudioInputStream(file);
+			byte[] data = new byte[in.getFormat().getFrameSize()
+					* (int) in.getFrameLength()];
+			for (int read = 0; read < data.length;) {
+				int n = in.read(data, read, data.length - read);
+				if (n < 0)
+					break;
+				read += n;
+			}
+			in.close();
+			short[] s = new short[data.length / 2];
+			for (int i = 0; i < s.length; i++)
+				s[i] = (short) ((data[2 * i] << 8) | (data[2 * i + 1] & 0xff));
+			result.add(s);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the spectrum like AiffSound did before: a new transform for
+	 * every file and the full complex spectrum, of which only a quarter is
+	 * used.
+	 */
+	private static double[] spectrumBefore(short[] samples) {
+		double[] data = new double[samples.length];
+		for (int i = 0; i < samples.length; i++)
+			data[i] = samples[i];
+		data = oneMorePowerOfTwo(data);
+		new DoubleFFT_1D(data.length / 2).realForwardFull(data);
+		double[] result = new double[data.length / 4];
+		for (int i = 0; i < data.length / 2; i += 2)
+			result[i / 2] = Math.sqrt(data[i] * data[i] + data[i + 1]
+					* data[i + 1]);
+		return result;
+	}
+
+	/** The window of the samples which AiffSound transforms. */
+	private static double[] oneMorePowerOfTwo(double[] data) {
+		int length = data.length;
+		int minPowerOfTwo = 1;
+		for (int i = 1; i <= length; i *= 2) {
+			if (i == length)
+				return data;
+			minPowerOfTwo = i;
+		}
+		double[] result = new double[minPowerOfTwo * 2];
+		int start = ((length - minPowerOfTwo) / 2) - 1;
+		System.arraycopy(data, start, result, 0, minPowerOfTwo);
+		return result;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String directory = args.length > 0 ? args[0] : "vokale/data";
+		List<short[]> samples = readSamples(directory);
+		System.out.println(samples.size() + " files in " + directory);
+
+		// Einige Runden zum Aufwaermen, die letzte wird gemessen
+		long before = 0, after = 0;
+		double maxError = 0;
+		for (int round = 0; round < 5; round++) {
+			Collection<double[]> old = new ArrayList<double[]>(samples.size());
+			long start = System.nanoTime();
+			for (short[] s : samples)
+				old.add(spectrumBefore(s));
+			before = System.nanoTime() - start;
+
+			Collection<double[]> spectra = new ArrayList<double[]>(samples
+					.size());
+			start = System.nanoTime();
+			for (short[] s : samples)
+				spectra.add((double[]) new AiffSound(s, "a", "a.aiff")
+						.previewRawData());
+			after = System.nanoTime() - start;
+
+			maxError = 0;
+			Iterator<double[]> it = old.iterator();
+			for (double[] spectrum : spectra) {
+				double[] expected = it.next();
+				for (int i = 0; i < spectrum.length; i++)
+					maxError = Math.max(maxError, Math.abs(spectrum[i]
+							- expected[i]));
+			}
+		}
+		System.out.println("Before: " + before / 1000000 + " ms");
+		System.out.println("After:  " + after / 1000000 + " ms");
+		System.out.println("Maximum difference of the spectra: " + maxError);
+		// JTransforms haelt seine Threads noch eine Weile am Leben
+		System.exit(0);
+	}
+}
@@ -0,0 +1,75 @@
+package yaprnn.mlp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the forward pass, the backpropagation and the weight adjustment
+ * of a single {@link Layer} connected to an input layer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayerBenchmark {
+
+	@Param( { "100", "784" })
+	public int inputs;
+
+	@Param( { "20", "100" })
+	public int neurons;
+
+	private Layer layer;
+	private double[] error;
+
+	@Setup
+	public void setUp() throws BadConfigException {
+		Random random = new Random(42);
+		Layer input = new Layer(null, inputs, new TangensHyperbolicus(), 0);
+		layer = new Layer(input, neurons, new TangensHyperbolicus(), 1);
+
+		double[] values = new double[inputs];
+		for (int i = 0; i < values.length; i++)
+			values[i] = random.nextDouble();
+		input.setInput(values);
+
+		error = new double[layer.getSize()];
+		for (int i = 0; i < error.length; i++)
+			error[i] = random.nextDouble() * 1e-3;
+	}
+
+	@Benchmark
+	public double[] getOutput() {
+		return layer.getOutput();
+	}
+
+	@Benchmark
+	public double backPropagate() {
+		return layer.backPropagate(error);
+	}
+
+	@Benchmark
+	public void update() {
+		layer.update(1e-3);
+	}
+
+	@Benchmark
+	public void updateWithMomentum() {
+		layer.update(1e-3, 0.5);
+	}
+
+}
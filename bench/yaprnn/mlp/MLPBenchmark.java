@@ -0,0 +1,109 @@
+package yaprnn.mlp;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yaprnn.dvv.Data;
+
+/**
+ * Benchmarks training, testing and classifying with a whole {@link MLP} on
+ * {@link SyntheticData}. Every training benchmark performs one epoch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MLPBenchmark {
+
+	private static final int SAMPLES = 1000;
+	private static final int CLASSES = 10;
+
+	@Param( { "100", "784" })
+	public int inputs;
+
+	@Param( { "20", "100" })
+	public int neurons;
+
+	@Param( { "1", "3" })
+	public int hiddenLayers;
+
+	@Param( { "32" })
+	public int batchSize;
+
+	private MLP mlp;
+	private Collection<Data> data;
+	private double[] input;
+	private double[] result;
+	private double[][] vectors;
+
+	@Setup
+	public void setUp() throws BadConfigException {
+		int[] hidden = new int[hiddenLayers];
+		Arrays.fill(hidden, neurons);
+		double[] bias = new double[hiddenLayers];
+		Arrays.fill(bias, 1);
+		ActivationFunction[] functions = new ActivationFunction[hiddenLayers + 2];
+		Arrays.fill(functions, new TangensHyperbolicus());
+
+		mlp = new MLP(inputs, CLASSES, hidden, functions, bias);
+		data = SyntheticData.create(SAMPLES, inputs, CLASSES);
+		input = data.iterator().next().getData();
+		vectors = new double[data.size()][];
+		int i = 0;
+		for (Data d : data)
+			vectors[i++] = d.getData();
+		result = new double[mlp.getLayerSize(mlp.getNumLayers() - 1)];
+	}
+
+	@Benchmark
+	public double runOnline() {
+		return mlp.runOnline(data, 1e-3, 0);
+	}
+
+	@Benchmark
+	public double runOnlineWithMomentum() {
+		return mlp.runOnline(data, 1e-3, 0.5);
+	}
+
+	@Benchmark
+	public double runBatch() {
+		return mlp.runBatch(data, batchSize, 1e-3, 0);
+	}
+
+	@Benchmark
+	public double runBatchWithMomentum() {
+		return mlp.runBatch(data, batchSize, 1e-3, 0.5);
+	}
+
+	@Benchmark
+	public double runTest() {
+		return mlp.runTest(data);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public double[] classify() {
+		return mlp.classify(input, result);
+	}
+
+	@Benchmark
+	public double[][] classifyBatch() {
+		return mlp.classify(vectors);
+	}
+
+}
@@ -0,0 +1,123 @@
+package yaprnn.mlp;
+
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the double precision {@link MLP} with the single precision
+ * {@link FloatMLP} on the ImageClassifier network from doc/examples. The
+ * benchmarks measure the classification speed, main() prints how far the
+ * results of both networks differ.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrecisionBenchmark {
+
+	private static final String NETWORK = "doc/examples/ImageClassifier.mlp";
+	private static final int SAMPLES = 10000;
+
+	private MLP mlp;
+	private FloatMLP floatMlp;
+	private double[][] inputs;
+	private double[] result;
+	private int next;
+
+	@Setup
+	public void setUp() throws Exception {
+		mlp = load(NETWORK);
+		floatMlp = new FloatMLP(mlp);
+		inputs = createInputs(mlp.getLayerSize(0) - 1, SAMPLES);
+		result = new double[mlp.getLayerSize(mlp.getNumLayers() - 1)];
+	}
+
+	@Benchmark
+	public double[] classifyDouble() {
+		next = (next + 1) % inputs.length;
+		return mlp.classify(inputs[next], result);
+	}
+
+	@Benchmark
+	public double[] classifyFloat() {
+		next = (next + 1) % inputs.length;
+		return floatMlp.classify(inputs[next], result);
+	}
+
+	/**
+	 * Loads the double precision network from a file written by
+	 * Core.saveMLP.
+	 */
+	private static MLP load(String filename) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(new FileInputStream(
+				filename));
+		MLPStub stub = (MLPStub) in.readObject();
+		in.close();
+		return (MLP) stub.network();
+	}
+
+	/**
+	 * Creates inputs which look like images preprocessed with the hyperbolic
+	 * tangent: most pixels are black, the others are scaled close to 1.
+	 */
+	private static double[][] createInputs(int dimension, int size) {
+		Random random = new Random(42);
+		TangensHyperbolicus tanh = new TangensHyperbolicus();
+		double[][] inputs = new double[size][dimension];
+		for (int i = 0; i < size; i++)
+			for (int j = 0; j < dimension; j++)
+				if (random.nextDouble() < 0.3)
+					inputs[i][j] = tanh.compute(random.nextInt(256) / 64.0);
+		return inputs;
+	}
+
+	/**
+	 * Prints the differences between the results of both networks.
+	 */
+	public static void main(String[] args) throws Exception {
+		MLP mlp = load(args.length > 0 ? args[0] : NETWORK);
+		FloatMLP floatMlp = new FloatMLP(mlp);
+		double[][] inputs = createInputs(mlp.getLayerSize(0) - 1, SAMPLES);
+
+		double maxDiff = 0, sumDiff = 0;
+		int sameClass = 0, outputs = 0;
+		for (double[] input : inputs) {
+			double[] d = mlp.classify(input);
+			double[] f = floatMlp.classify(input);
+			int dClass = 0, fClass = 0;
+			for (int k = 0; k < d.length; k++) {
+				double diff = Math.abs(d[k] - f[k]);
+				maxDiff = Math.max(maxDiff, diff);
+				sumDiff += diff;
+				if (d[k] > d[dClass])
+					dClass = k;
+				if (f[k] > f[fClass])
+					fClass = k;
+			}
+			if (dClass == fClass)
+				sameClass++;
+			outputs += d.length;
+		}
+
+		System.out.println("Samples:                " + inputs.length);
+		System.out.println("Same class:             " + sameClass);
+		System.out.println("Max. difference in %:   " + maxDiff);
+		System.out.println("Mean difference in %:   " + sumDiff / outputs);
+	}
+
+}
@@ -0,0 +1,87 @@
+package yaprnn.mlp;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This object computes the inner loops of {@link Kernels} with the Vector API, which maps them on the SIMD
+ * instructions of the processor. It needs Java 16 or later and is only loaded if the JVM has been started with
+ * "--add-modules jdk.incubator.vector". The elements which do not fill a whole vector are computed as scalars.
+ */
+class VectorKernels extends Kernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+		int upper = SPECIES.loopBound(length);
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (; i < upper; i += SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+			DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+			acc = va.fma(vb, acc);
+		}
+
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+	@Override
+	void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+		int upper = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < upper; i += SPECIES.length()) {
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+			vx.fma(DoubleVector.broadcast(SPECIES, alpha), vy).intoArray(y, yOffset + i);
+		}
+
+		for (; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	@Override
+	void update(double[] weights, double[] gradient, double eta) {
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+		int upper = SPECIES.loopBound(weights.length);
+		int k = 0;
+		for (; k < upper; k += SPECIES.length()) {
+			DoubleVector g = DoubleVector.fromArray(SPECIES, gradient, k);
+			DoubleVector w = DoubleVector.fromArray(SPECIES, weights, k);
+			g.mul(-eta).add(w).intoArray(weights, k);
+			zero.intoArray(gradient, k);
+		}
+
+		for (; k < weights.length; k++) {
+			weights[k] -= eta * gradient[k];
+			gradient[k] = 0;
+		}
+	}
+
+	@Override
+	void update(double[] weights, double[] gradient, double[] lastGradient, double eta, double momentum) {
+		double negMomentum = 1 - momentum;
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+		int upper = SPECIES.loopBound(weights.length);
+		int k = 0;
+		for (; k < upper; k += SPECIES.length()) {
+			DoubleVector g = DoubleVector.fromArray(SPECIES, gradient, k);
+			DoubleVector last = DoubleVector.fromArray(SPECIES, lastGradient, k);
+			DoubleVector w = DoubleVector.fromArray(SPECIES, weights, k);
+			DoubleVector change = g.mul(negMomentum).add(last.mul(momentum)).mul(eta);
+			change.intoArray(lastGradient, k);
+			w.sub(change).intoArray(weights, k);
+			zero.intoArray(gradient, k);
+		}
+
+		for (; k < weights.length; k++) {
+			lastGradient[k] = eta * (negMomentum * gradient[k] + momentum * lastGradient[k]);
+			weights[k] -= lastGradient[k];
+			gradient[k] = 0;
+		}
+	}
+}
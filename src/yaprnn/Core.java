@@ -1,11 +1,7 @@
 package yaprnn;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -16,10 +12,13 @@ import yaprnn.dvv.DataTypeMismatchException;
 import yaprnn.dvv.FileMismatchException;
 import yaprnn.dvv.InvalidFileException;
 import yaprnn.dvv.NoSuchFileException;
+import yaprnn.dvv.ProgressListener;
 import yaprnn.mlp.ActivationFunction;
 import yaprnn.mlp.BadConfigException;
 import yaprnn.mlp.Eta;
+import yaprnn.mlp.InterpolatedFunction;
 import yaprnn.mlp.Linear;
+import yaprnn.mlp.MLPFile;
 import yaprnn.mlp.MLPStub;
 import yaprnn.mlp.NeuralNetwork;
 import yaprnn.mlp.Sigmoid;
@@ -39,6 +38,7 @@ public class Core {
 	private List<Double> trainingErrors;
 	private List<Double> testErrors;
 	private boolean run = true;
+	private double throughput;
 
 	/** Constructs a new Core Object. */
 	public Core() {
@@ -46,6 +46,9 @@ public class Core {
 		activations.add(new TangensHyperbolicus());
 		activations.add(new Sigmoid());
 		activations.add(new Linear());
+		// Faster approximations, the interpolation error is below 2e-6
+		activations.add(new InterpolatedFunction(new TangensHyperbolicus(), -8, 8, 4096));
+		activations.add(new InterpolatedFunction(new Sigmoid(), -16, 16, 4096));
 	}
 
 	/**
@@ -61,14 +64,79 @@ public class Core {
 	public double[] classify(Data input) throws DataTypeMismatchException {
 		if (mlp == null)
 			return null;
-		if (input.getData() == null)
+		// Held in a store, every call of getData() returns a new copy
+		double[] data = input.getData();
+		if (data == null)
 			throw new DataTypeMismatchException();
-		if (!mlp.setNumInputNeurons(input.getData().length)
+		if (!mlp.setNumInputNeurons(data.length)
 				|| !mlp.setNumOutputNeurons(dvv.getNumOutputNeurons())
 				|| !mlp.setDataType(dvv.getDataType())) {
 			throw new DataTypeMismatchException();
 		}
-		return mlp.classify(input.getData());
+		return mlp.classify(data);
+	}
+
+	/**
+	 * Classifies the given data items at once, using as many threads as
+	 * processors are available. See {@link #classify(Collection, int)}.
+	 * 
+	 * @param data
+	 *            the input data items
+	 * @return the vectors of percentages in the order of data
+	 */
+	public double[][] classify(Collection<Data> data)
+			throws DataTypeMismatchException {
+		return classify(data, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Classifies the given data items at once. This method returns a vector
+	 * of percentages for every data item like {@link #classify(Data)}. The
+	 * throughput can be queried by {@link #getClassificationThroughput()}.
+	 * 
+	 * @param data
+	 *            the input data items
+	 * @param threads
+	 *            the number of threads used for classifying
+	 * @return the vectors of percentages in the order of data
+	 */
+	public double[][] classify(Collection<Data> data, int threads)
+			throws DataTypeMismatchException {
+		if (mlp == null)
+			return null;
+
+		double[][] inputs = new double[data.size()][];
+		int i = 0;
+		for (Data d : data) {
+			inputs[i] = d.getData();
+			if (inputs[i] == null || inputs[i].length != inputs[0].length)
+				throw new DataTypeMismatchException();
+			i++;
+		}
+		if (inputs.length == 0)
+			return inputs;
+		if (!mlp.setNumInputNeurons(inputs[0].length)
+				|| !mlp.setNumOutputNeurons(dvv.getNumOutputNeurons())
+				|| !mlp.setDataType(dvv.getDataType())) {
+			throw new DataTypeMismatchException();
+		}
+
+		long start = System.nanoTime();
+		double[][] result = mlp.classify(inputs, threads);
+		long time = System.nanoTime() - start;
+
+		throughput = inputs.length * 1e9 / Math.max(time, 1);
+		return result;
+	}
+
+	/**
+	 * Returns the throughput of the last call of
+	 * {@link #classify(Collection, int)}.
+	 * 
+	 * @return the number of classified samples per second
+	 */
+	public double getClassificationThroughput() {
+		return throughput;
 	}
 
 	/**
@@ -93,7 +161,8 @@ public class Core {
 	}
 
 	/**
-	 * Opens an AiffSound data set contained in the stated filenames.
+	 * Opens an AiffSound data set contained in the stated filenames. The
+	 * progress is reported to the GUI.
 	 * 
 	 * @param filenames
 	 *            the collection containing the sound data
@@ -104,7 +173,15 @@ public class Core {
 	 */
 	public void openAiffSound(Collection<String> filenames)
 			throws InvalidFileException, NoSuchFileException {
-		dvv = new DVV(filenames);
+		// Der Fortschritt wird an die GUI weitergereicht
+		ProgressListener listener = null;
+		if (gui != null)
+			listener = new ProgressListener() {
+				public void progress(int done, int total) {
+					gui.setImportProgress(done, total);
+				}
+			};
+		dvv = new DVV(filenames, listener);
 		gui.setDataSet(dvv.getDataSet());
 	}
 
@@ -150,14 +227,15 @@ public class Core {
 	 */
 	public NeuralNetwork loadMLP(String filename) throws NoSuchFileException,
 			IOException, ClassNotFoundException {
-		ObjectInputStream in;
 		try {
-			in = new ObjectInputStream(new FileInputStream(filename));
+			// Files of older versions have been written by Java serialization
+			if (MLPFile.isBinary(filename))
+				mlp = MLPFile.read(filename, activations);
+			else
+				mlp = MLPFile.importSerialized(filename);
 		} catch (FileNotFoundException e) {
 			throw new NoSuchFileException(filename);
 		}
-		mlp = (MLPStub) in.readObject();
-		in.close();
 		return mlp;
 	}
 
@@ -169,12 +247,8 @@ public class Core {
 	 */
 	public void saveMLP(String filename) throws NoSuchFileException,
 			IOException {
-		ObjectOutputStream out;
 		try {
-			out = new ObjectOutputStream(new FileOutputStream(filename));
-			out.writeObject(mlp);
-			out.flush();
-			out.close();
+			MLPFile.write(mlp, filename);
 		} catch (FileNotFoundException e) {
 			throw new NoSuchFileException(filename);
 		}
@@ -195,6 +269,27 @@ public class Core {
 	public void trainOnline(Eta eta, int maxIterations, double maxError,
 			double momentum) throws DataTypeMismatchException,
 			BadConfigException {
+		trainOnline(eta, maxIterations, maxError, momentum, 1);
+	}
+
+	/**
+	 * Performs online training with the specified parameters, using the
+	 * current data set and mlp. With more than one thread, every thread trains
+	 * with its own part of the training data and adjusts the weights without
+	 * locking.
+	 * 
+	 * @param eta
+	 *            the learning rate
+	 * @param maxIterations
+	 *            the maximum number of iterations (epochs) to perform
+	 * @param maxError
+	 *            training stops if the test error falls below maxError
+	 * @param threads
+	 *            the number of threads used for training
+	 */
+	public void trainOnline(Eta eta, int maxIterations, double maxError,
+			double momentum, int threads) throws DataTypeMismatchException,
+			BadConfigException {
 		trainingErrors = new LinkedList<Double>();
 		testErrors = new LinkedList<Double>();
 		double trainingErr = Double.MAX_VALUE;
@@ -210,7 +305,7 @@ public class Core {
 			Collection<Data> train = dvv.getTrainingData();
 
 			trainingErr = mlp.runOnline(train, eta.getEta(trainingErr),
-					momentum);
+					momentum, threads);
 			testErr = mlp.runTest(test);
 
 			trainingErrors.add(trainingErr);
@@ -240,6 +335,27 @@ public class Core {
 
 	public void trainBatch(Eta eta, int maxIterations, double maxError,
 			int batchSize, double momentum) throws DataTypeMismatchException {
+		trainBatch(eta, maxIterations, maxError, batchSize, momentum, Runtime
+				.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Performs batch training with the specified parameters, using the current
+	 * data set and mlp. Every batch is split across the specified number of
+	 * threads.
+	 * 
+	 * @param eta
+	 *            the learning rate
+	 * @param maxIterations
+	 *            the maximum number of iterations (epochs) to perform
+	 * @param maxError
+	 *            training stops if the test error falls below maxError
+	 * @param threads
+	 *            the number of threads used for training
+	 */
+	public void trainBatch(Eta eta, int maxIterations, double maxError,
+			int batchSize, double momentum, int threads)
+			throws DataTypeMismatchException {
 		trainingErrors = new LinkedList<Double>();
 		testErrors = new LinkedList<Double>();
 		double trainingErr = Double.MAX_VALUE;
@@ -256,7 +372,7 @@ public class Core {
 			Collection<Data> train = dvv.getTrainingData();
 
 			trainingErr = mlp.runBatch(train, batchSize, eta
-					.getEta(trainingErr), momentum);
+					.getEta(trainingErr), momentum, threads);
 			testErr = mlp.runTest(test);
 
 			trainingErrors.add(trainingErr);
@@ -274,7 +390,8 @@ public class Core {
 
 	/**
 	 * Preprocesses the currently loaded data set using the specified
-	 * parameters. If no data set is loaded, this method does nothing.
+	 * parameters. If no data set is loaded, this method does nothing. The
+	 * progress is reported to the GUI.
 	 * 
 	 * @param resolution
 	 *            the desired resolution of the result
@@ -289,7 +406,15 @@ public class Core {
 			ActivationFunction scalingFunction) throws NoSuchFileException {
 		if (dvv != null)
 			try {
-				dvv.preprocess(resolution, overlap, scalingFunction);
+				// Der Fortschritt wird an die GUI weitergereicht
+				ProgressListener listener = null;
+				if (gui != null)
+					listener = new ProgressListener() {
+						public void progress(int done, int total) {
+							gui.setPreprocessingProgress(done, total);
+						}
+					};
+				dvv.preprocess(resolution, overlap, scalingFunction, listener);
 			} catch (NoSuchFileException ex) {
 				throw new NoSuchFileException(ex.getFilename());
 			}
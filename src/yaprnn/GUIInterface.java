@@ -31,4 +31,26 @@ public interface GUIInterface {
 	 */
 	public void setDataSet(Collection<Data> dataset);
 
+	/**
+	 * Updates the progress of the preprocessing. This method may be called by
+	 * any thread.
+	 * 
+	 * @param done
+	 *            the number of preprocessed samples
+	 * @param total
+	 *            the number of all samples
+	 */
+	public void setPreprocessingProgress(int done, int total);
+
+	/**
+	 * Updates the progress of the import of sound files. This method may be
+	 * called by any thread.
+	 * 
+	 * @param done
+	 *            the number of imported files
+	 * @param total
+	 *            the number of all files
+	 */
+	public void setImportProgress(int done, int total);
+
 }
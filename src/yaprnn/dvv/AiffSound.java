@@ -1,16 +1,28 @@
 package yaprnn.dvv;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 import yaprnn.mlp.ActivationFunction;
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
 
 
 
@@ -22,11 +34,19 @@ public class AiffSound extends Data {
 
 	private double[] data;
 	private double[] rawData;
+	// prefixSums[i] holds the sum of the first i values of rawData
+	private double[] prefixSums;
 	private String label;
 	private int target;
 	private String filename;
 	private String subsamplingOptions;
 
+	// Die FFT-Plaene werden nach ihrer Groesse geteilt
+	private final static Map<Integer, DoubleFFT_1D> plans = new HashMap<Integer, DoubleFFT_1D>();
+
+	// Anzahl der Threads, die gleichzeitig Dateien lesen
+	private final static int IO_THREADS = 8;
+
 	/** Constructs an AiffSound object from the specified data.
 	 *
 	 *  @param rawData the sound data
@@ -34,14 +54,21 @@ public class AiffSound extends Data {
 	 *  @param filename the file this object was loaded from
 	 */
 	public AiffSound(short[] rawData, String label, String filename) {
-		this.rawData = new double[rawData.length];
-		for (int i = 0; i < rawData.length; i++)
-			this.rawData[i] = rawData[i];
-		
-		this.rawData = oneMorePowerOfTwo(this.rawData);
-		edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D fft = new edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D(this.rawData.length/2);
-		fft.realForwardFull(this.rawData);
-		this.rawData = calcAbsolutValue(this.rawData);
+		this(spectrum(rawData), label, filename);
+	}
+
+	/** Constructs an AiffSound object from a spectrum computed before, e.g.
+	 *  read from the {@link FeatureCache}.
+	 *
+	 *  @param spectrum the spectrum returned by {@link #getSpectrum()}
+	 *  @param label    the classifying label
+	 *  @param filename the file this object was loaded from
+	 */
+	AiffSound(double[] spectrum, String label, String filename) {
+		this.rawData = spectrum;
+		this.prefixSums = new double[this.rawData.length + 1];
+		for (int i = 0; i < this.rawData.length; i++)
+			this.prefixSums[i + 1] = this.prefixSums[i] + this.rawData[i];
 		this.label = label;
 		this.filename = filename;
 		if (label.equalsIgnoreCase("a")) this.target = 0;
@@ -52,13 +79,48 @@ public class AiffSound extends Data {
 		this.subsamplingOptions = "Not yet subsampled";
 	}
 
+	/** Computes the frequency-spectrum of the sound data.
+	 *
+	 *  @param rawData the sound data
+	 *  @return the absolute values of the lower half of the spectrum
+	 */
+	private static double[] spectrum(short[] rawData) {
+		double[] spectrum = new double[rawData.length];
+		for (int i = 0; i < rawData.length; i++)
+			spectrum[i] = rawData[i];
+
+		spectrum = oneMorePowerOfTwo(spectrum);
+		// Nur die erste Haelfte wird transformiert, davon wird nur die untere
+		// Haelfte des Spektrums gebraucht
+		getPlan(spectrum.length/2).realForward(spectrum);
+		return calcAbsolutValue(spectrum);
+	}
+
+	/** Returns the spectrum the subsampling is computed from. The array is
+	 *  not copied.
+	 *
+	 *  @return the spectrum
+	 */
+	double[] getSpectrum() {
+		return rawData;
+	}
+
 	/** Returns the completely preprocessed data of this sound.
+	 *
+	 *  If the data has been moved into a store, a copy is returned.
 	 *
 	 *  @return the preprocessed data
 	 */
 	@Override
 	public double[] getData() {
-		return data;
+		return data != null ? data : getStoredData();
+	}
+
+	/** Releases the preprocessed data after it has been moved into a store.
+	 */
+	@Override
+	protected void releaseData() {
+		data = null;
 	}
 
 	/** Creates the frequnecy-spectrum of rawData for previewing.
@@ -133,16 +195,11 @@ public class AiffSound extends Data {
 	 */
 	@Override
 	public Object previewSubsampledData(int resolution, double overlap) {
-		final double LAMBDA = 1.02;
+		Bands bands = Bands.get(rawData.length, resolution, overlap, true);
 		double[] newData = new double[resolution];
-		double width = getFirstWidth(resolution, overlap, LAMBDA);
-		double index=0.0;
 		
-		for (int i = 0; i<resolution; i++){
-			newData[i] = middle(width, index, overlap);
-			index += (1-overlap) * width;
-			width = LAMBDA*width;
-		}
+		for (int i = 0; i<resolution; i++)
+			newData[i] = bands.average(prefixSums, i);
 		
 		return newData;
 	}
@@ -158,51 +215,129 @@ public class AiffSound extends Data {
 	 */
 	@Override
 	public void subsample(int resolution, double overlap, 	ActivationFunction scalingFunction) {
-		final double LAMBDA = 1.02;
+		Bands bands = Bands.get(rawData.length, resolution, overlap, false);
 		double[] newData = new double[resolution];
-		double width = getFirstWidth(resolution, overlap, LAMBDA);
-		double index=0.0;
 	
-		for (int i = 0; i < resolution; i++ ) {
-			newData[i] = scalingFunction.compute(middle(width, index, overlap)/500000);
-			width = LAMBDA*width;
-			index += (1-overlap)*width;
-		}
+		for (int i = 0; i < resolution; i++ )
+			newData[i] = scalingFunction.compute(bands.average(prefixSums, i)/500000);
 		
 		this.data = newData;
+		clearStore();
+		setSubsamplingOptions(resolution, overlap);
+	}
+
+	/** Sets the subsampling options describing the preprocessed data.
+	 *
+	 *  @param resolution the resolution the data was sampled to
+	 *  @param overlap    the overlap used when determining the window sizes
+	 */
+	@Override
+	protected void setSubsamplingOptions(int resolution, double overlap) {
 		DecimalFormat f = new DecimalFormat("#0.00"); 
 		this.subsamplingOptions = "Resolution: " + resolution + "       Overlap: " + f.format(overlap);
 	}
 	
 	
-	/** Calculates the average of a stated sequence from data
-	 * 
-	 * @param index the first element
-	 * @param widht the width of the sequence
-	 * @return the average 
+	/** The windows of the spectrum averaged by the subsampling. They only
+	 *  depend on the length of the spectrum and the subsampling parameters, so
+	 *  they are computed once and shared by all sounds. The window i covers
+	 *  the bins from[i] to to[i] and its sum is divided by divisor[i].
 	 */
-	
-	private double middle(double width, double index, double overlap){
-		
-		if(width == 0) return 0;
-		
-		double average = 0;
-		int leftIndex = (int) Math.round(index - (width * overlap));
-		int rightIndex = Math.min(((int) Math.round(leftIndex + width)),this.rawData.length-1);
-		
-		if (leftIndex<0){
-			for(int i = 0; i <= rightIndex;i++)
-				average += this.rawData[i];
-		
-			return average/ rightIndex;
+	private static class Bands {
+
+		private final static double LAMBDA = 1.02;
+		// Die zuletzt benutzten Tabellen, z.B. fuer die Vorschau
+		private final static int CACHE_SIZE = 32;
+		private final static Map<String, Bands> cache = new LinkedHashMap<String, Bands>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Bands> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+
+		private final int[] from;
+		private final int[] to;
+		private final double[] divisor;
+
+		/** Returns the windows for the specified parameters.
+		 *
+		 *  @param length     the length of the spectrum
+		 *  @param resolution the number of windows
+		 *  @param overlap    the overlap between adjacent windows
+		 *  @param preview    true for the windows of the preview, which places
+		 *                    the windows slightly different
+		 *  @return the windows
+		 */
+		static Bands get(int length, int resolution, double overlap, boolean preview) {
+			String key = length + "/" + resolution + "/" + Double.doubleToLongBits(overlap) + "/" + preview;
+			synchronized (cache) {
+				Bands bands = cache.get(key);
+				if (bands == null) {
+					bands = new Bands(length, resolution, overlap, preview);
+					cache.put(key, bands);
+				}
+				return bands;
+			}
 		}
-		
-		for(int i = leftIndex; i <= rightIndex;i++)
-			average += this.rawData[i];
+
+		private Bands(int length, int resolution, double overlap, boolean preview) {
+			from = new int[resolution];
+			to = new int[resolution];
+			divisor = new double[resolution];
+			double width = getFirstWidth(length, resolution, overlap, LAMBDA);
+			double index=0.0;
 			
-		// Es kann vorkommen, das das letzte Fenster über das Array hinausgeht
-		return average / (rightIndex-leftIndex);
-		
+			for (int i = 0; i < resolution; i++) {
+				window(i, length, width, index, overlap);
+				if (preview) {
+					index += (1-overlap) * width;
+					width = LAMBDA*width;
+				} else {
+					width = LAMBDA*width;
+					index += (1-overlap)*width;
+				}
+			}
+		}
+
+		/** Determines the window i like the average was calculated before,
+		 *  including its divisor.
+		 */
+		private void window(int i, int length, double width, double index, double overlap) {
+			if (width == 0) {
+				from[i] = 0;
+				to[i] = -1;
+				divisor[i] = 1;
+				return;
+			}
+			
+			int leftIndex = (int) Math.round(index - (width * overlap));
+			int rightIndex = Math.min(((int) Math.round(leftIndex + width)),length-1);
+			
+			if (leftIndex<0) {
+				from[i] = 0;
+				to[i] = rightIndex;
+				divisor[i] = rightIndex;
+				return;
+			}
+			
+			from[i] = leftIndex;
+			to[i] = rightIndex;
+			// Es kann vorkommen, das das letzte Fenster über das Array hinausgeht
+			divisor[i] = rightIndex-leftIndex;
+		}
+
+		/** Calculates the average of the window i.
+		 *
+		 *  @param prefixSums the cumulative sums of the spectrum
+		 *  @param i the index of the window
+		 *  @return the average
+		 */
+		double average(double[] prefixSums, int i) {
+			double sum = to[i] >= from[i] ? prefixSums[to[i] + 1] - prefixSums[from[i]] : 0;
+			return sum / divisor[i];
+		}
 	}
 
 	/** Reads several Sounds from the specified files and returns them as a collection.
@@ -213,31 +348,127 @@ public class AiffSound extends Data {
 	 
 	 public static Collection<Data> readFromFile(Collection<String> filenames)
 			throws InvalidFileException, NoSuchFileException {
-		 		AudioInputStream audioInput = null;
-		 		File file = null;
-			Collection<Data> result = new ArrayList<Data>(filenames.size());
-			for (String name : filenames){
-				file = new File(name);
-				try {
-					audioInput = AudioSystem.getAudioInputStream(file);
-				}	catch(UnsupportedAudioFileException e) {
-					throw new InvalidFileException(name);
-				}   catch (IOException e) {
-					throw new NoSuchFileException(name);
-				}
+		 return readFromFile(filenames, null);
+	 }
+
+	/** Reads several Sounds from the specified files concurrently and returns them
+	 *  as a collection in the order of the filenames. The files are read by a pool
+	 *  of I/O threads, the spectra are computed by a pool with one thread per
+	 *  processor.
+	 *
+	 *  @param dataFilename  the collection holding the filenames
+	 *  @param listener      receives the number of loaded files, may be null
+	 *  @return a collection of the loaded sounds
+	 */
+	 
+	 public static Collection<Data> readFromFile(Collection<String> filenames, final ProgressListener listener)
+			throws InvalidFileException, NoSuchFileException {
+		 return readFromFile(filenames, null, listener);
+	 }
+
+	/** Reads several Sounds like {@link #readFromFile(Collection, ProgressListener)}.
+	 *  Files whose spectrum is known are not read again.
+	 *
+	 *  @param dataFilename  the collection holding the filenames
+	 *  @param spectra       the spectra of some files by filename, may be null
+	 *  @param listener      receives the number of loaded files, may be null
+	 *  @return a collection of the loaded sounds
+	 */
+	 static Collection<Data> readFromFile(Collection<String> filenames, final Map<String, double[]> spectra,
+			final ProgressListener listener) throws InvalidFileException, NoSuchFileException {
+			final int total = filenames.size();
+			final AtomicInteger done = new AtomicInteger();
+			ExecutorService io = Executors.newFixedThreadPool(Math.max(1, Math.min(IO_THREADS, total)));
+			final ExecutorService cpu = Executors.newFixedThreadPool(Math.max(1,
+					Math.min(Runtime.getRuntime().availableProcessors(), total)));
+			try {
+				// Jede gelesene Datei wird sofort an die Rechen-Threads weitergegeben
+				List<Future<Future<AiffSound>>> sounds = new ArrayList<Future<Future<AiffSound>>>(total);
+				for (final String name : filenames)
+					sounds.add(io.submit(new Callable<Future<AiffSound>>() {
+						public Future<AiffSound> call() throws Exception {
+							final double[] spectrum = spectra == null ? null : spectra.get(name);
+							final byte[] data = spectrum == null ? readData(name) : null;
+							return cpu.submit(new Callable<AiffSound>() {
+								public AiffSound call() {
+									String label = (new File(name)).getName().substring(0, 1); //label ist der erste Buchstabe von filename
+									AiffSound sound = data == null ? new AiffSound(spectrum, label, name)
+											: new AiffSound(convertByteToShort(data), label, name);
+									int count = done.incrementAndGet();
+									if (listener != null)
+										listener.progress(count, total);
+									return sound;
+								}
+							});
+						}
+					}));
+
+				// Die Fehler werden in der Reihenfolge der Dateien gemeldet
+				Collection<Data> result = new ArrayList<Data>(total);
+				for (Future<Future<AiffSound>> sound : sounds)
+					result.add(sound.get().get());
+				return result;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof InvalidFileException)
+					throw (InvalidFileException) cause;
+				if (cause instanceof NoSuchFileException)
+					throw (NoSuchFileException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new RuntimeException(cause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} finally {
+				io.shutdownNow();
+				cpu.shutdownNow();
+			}
+	 }
+
+	/** Reads the audio data of the specified file completely.
+	 *
+	 *  @param name  the filename
+	 *  @return the audio data
+	 */
+	 private static byte[] readData(String name) throws InvalidFileException, NoSuchFileException {
+			AudioInputStream audioInput = null;
+			try {
+				audioInput = AudioSystem.getAudioInputStream(new File(name));
+			}	catch(UnsupportedAudioFileException e) {
+				throw new InvalidFileException(name);
+			}   catch (IOException e) {
+				throw new NoSuchFileException(name);
+			}
+			try {
 				int frameSize = audioInput.getFormat().getFrameSize();
 				long frameLenght = audioInput.getFrameLength();
+				if (frameLenght == AudioSystem.NOT_SPECIFIED) {
+					// Die Laenge ist unbekannt, also bis zum Ende lesen
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					byte[] buffer = new byte[8192];
+					for (int n; (n = audioInput.read(buffer)) >= 0;)
+						out.write(buffer, 0, n);
+					return out.toByteArray();
+				}
 				byte[] data = new byte[frameSize * (int)frameLenght];
+				// read liefert nicht unbedingt alle Bytes auf einmal
+				for (int read = 0, n; read < data.length; read += n) {
+					n = audioInput.read(data, read, data.length - read);
+					if (n < 0)
+						break;
+				}
+				return data;
+			}	catch (IOException e) {
+				throw new InvalidFileException(name);
+			}	finally {
 				try {
-					audioInput.read(data); //read wird nicht gebraucht, aber verlangt.
+					audioInput.close();
 				}	catch (IOException e) {
-					e.printStackTrace();
 				}
-				String filename = name; //.substring(name.lastIndexOf("/")+1); //es handelt sich hierbei um eine Pfadangabe z.B. /home/bla/a3-08.aiff
-				String label = (new File(filename)).getName().substring(0, 1); //label ist der erste Buchstabe von filename
-				result.add(new AiffSound(convertByteToShort(data), label, filename));
 			}
-			return result;
 	 }
 	
 	/** Converts a bytearray into a doublearray
@@ -269,7 +500,7 @@ public class AiffSound extends Data {
 	  *  @return the array with a length power of two
 	  */
 	 
-	 private double[] oneMorePowerOfTwo(double[] data){
+	 private static double[] oneMorePowerOfTwo(double[] data){
 			int length = data.length;
 			int minPowerOfTwo = 1;
 
@@ -295,18 +526,42 @@ public class AiffSound extends Data {
 		}
 
 	
-	/** Calculates the abolute value from data with size n.
+	/** Returns the shared transform for the specified size. The plans only
+	 *  hold read-only tables, so they may be used by several threads at once.
+	 *  Transforms of more than 8192 values are split into several threads by
+	 *  JTransforms.
+	 *
+	 *  @param size the number of real values to transform
+	 *  @return the transform
+	 */
+	private static DoubleFFT_1D getPlan(int size) {
+		synchronized (plans) {
+			DoubleFFT_1D plan = plans.get(size);
+			if (plan == null) {
+				plan = new DoubleFFT_1D(size);
+				plans.put(size, plan);
+			}
+			return plan;
+		}
+	}
+
+	/** Calculates the abolute value from data with size 2n, of which the
+	 *  first n values hold the result of a real forward transform.
 	 *  The physical layout of the input data has to be as follows:
- 	 *	a[2*k] = Re[k], 
- 	 *	a[2*k+1] = Im[k], 0<=k<n
- 	 *	The new size of data i n/2
- 	 *	@param the array what will be calculated
- 	 *	@return the absolutvalue
+	 *	a[2*k] = Re[k], 
+	 *	a[2*k+1] = Im[k], 0<k<n/2
+	 *	a[0] = Re[0], a[1] = Re[n/2]
+	 *	The new size of data i n/2
+	 *	@param the array what will be calculated
+	 *	@return the absolutvalue
 	 */
 	
-	 private double[] calcAbsolutValue(double[] data){
+	 private static double[] calcAbsolutValue(double[] data){
 			double[] newdata = new double[data.length/4];
-			for (int i = 0; i < data.length/2; i +=2)
+			// Der Imaginaerteil von Re[0] ist immer 0
+			if (newdata.length > 0)
+				newdata[0] = java.lang.Math.sqrt(data[0]*data[0]);
+			for (int i = 2; i < data.length/2; i +=2)
 				newdata[i/2] = java.lang.Math.sqrt(data[i]*data[i] + data[i+1]*data[i+1]);
 			return newdata;
 		}
@@ -329,16 +584,17 @@ public class AiffSound extends Data {
 	
 	/** Calculates the first window width 
 	 * 
+	 * @param length the length of the spectrum
 	 * @param resolution the new resolution of data
 	 * @param overlap the overlap of the windows
 	 * @param lambda the increase of the window width
 	 * @return the first window width
 	 */
-	private double getFirstWidth(int resolution, double overlap, double lambda){
+	private static double getFirstWidth(int length, int resolution, double overlap, double lambda){
 		double temp=0;
 		for (int i = 0; i<=resolution-2; i++)
 			temp += Math.pow(lambda,i);
-		double width = (this.rawData.length) / ((1-overlap)*temp + Math.pow(lambda,resolution-1));
+		double width = (length) / ((1-overlap)*temp + Math.pow(lambda,resolution-1));
 		return width;
 	}
 
@@ -1,5 +1,6 @@
 package yaprnn.dvv;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -7,10 +8,18 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import yaprnn.mlp.ActivationFunction;
 
 /**
@@ -19,12 +28,35 @@ import yaprnn.mlp.ActivationFunction;
  */
 public class DVV {
 
+	/**
+	 * The default memory for preprocessed variants in bytes, see
+	 * {@link #setVariantMemory(long)}.
+	 */
+	public final static long DEFAULT_VARIANT_MEMORY = 512L << 20;
+
 	private final Collection<Data> allData;
+	// allData in the order of loading, which is kept by the rows of the
+	// stores, as shuffling reorders allData
+	private final Data[] loaded;
 	private Collection<Data> trainingData;
 	private Collection<Data> testData;
 	private int numInputNeurons;
 	private final int numOutputNeurons;
 	private final Data.Type type;
+	// The preprocessed data of allData outside of the heap
+	private FeatureStore store;
+	private boolean singlePrecisionStore = false;
+	// Runs the preprocessing, created on first use
+	private ForkJoinPool pool;
+	// The file keeping preprocessed data between sessions, may be null
+	private final String cacheFilename;
+	private boolean featureCacheEnabled = true;
+	// The checksums of the files of allData, computed on first use
+	private Map<String, Long> checksums;
+	// Stores of recently used preprocessing options, least recently used first
+	private final LinkedHashMap<String, FeatureStore> variants =
+			new LinkedHashMap<String, FeatureStore>(16, 0.75f, true);
+	private long variantMemory = DEFAULT_VARIANT_MEMORY;
 
 	/**
 	 * Constructs a DVV for holding {@link IdxPicture} data with the specified
@@ -45,8 +77,10 @@ public class DVV {
 			throws InvalidFileException, FileMismatchException,
 			NoSuchFileException, IOException {
 		allData = IdxPicture.readFromFile(dataFilename, labelFilename);
+		loaded = allData.toArray(new Data[0]);
 		numOutputNeurons = 10;
 		type = Data.Type.PICTURE;
+		cacheFilename = dataFilename + ".features";
 	}
 
 	/**
@@ -62,9 +96,63 @@ public class DVV {
 	 */
 	public DVV(Collection<String> filenames) throws InvalidFileException,
 			NoSuchFileException {
-		allData = AiffSound.readFromFile(filenames);
+		this(filenames, null);
+	}
+
+	/**
+	 * Constructs a DVV for holding {@link AiffSound} data with the specified
+	 * filenames. The files are read concurrently.
+	 * 
+	 * @param filenames
+	 *            the names of the file containing the sound data
+	 * @param listener
+	 *            receives the number of loaded files, may be null
+	 * @throws InvalideFileException
+	 *             if one of the files does not have the required format
+	 * @throws NoSuchFileException
+	 *             if one of the files does not exist
+	 */
+	public DVV(Collection<String> filenames, ProgressListener listener)
+			throws InvalidFileException, NoSuchFileException {
+		this(filenames, listener, true);
+	}
+
+	/**
+	 * Constructs a DVV for holding {@link AiffSound} data with the specified
+	 * filenames. The files are read concurrently. If the feature cache is
+	 * enabled, the spectra of files imported before are taken from there, so
+	 * only the checksums of those files have to be computed, and the spectra
+	 * of the other files are added to it.
+	 * 
+	 * @param filenames
+	 *            the names of the file containing the sound data
+	 * @param listener
+	 *            receives the number of loaded files, may be null
+	 * @param featureCacheEnabled
+	 *            true to use the cache file, see
+	 *            {@link #setFeatureCacheEnabled(boolean)}
+	 * @throws InvalideFileException
+	 *             if one of the files does not have the required format
+	 * @throws NoSuchFileException
+	 *             if one of the files does not exist
+	 */
+	public DVV(Collection<String> filenames, ProgressListener listener,
+			boolean featureCacheEnabled) throws InvalidFileException,
+			NoSuchFileException {
+		// Alle Dateien eines Verzeichnisses teilen sich einen Cache
+		cacheFilename = filenames.isEmpty() ? null : new File(new File(
+				filenames.iterator().next()).getAbsoluteFile().getParentFile(),
+				"yaprnn.features").getPath();
+		this.featureCacheEnabled = featureCacheEnabled;
+		Map<String, double[]> spectra = null;
+		if (featureCacheEnabled && cacheFilename != null)
+			spectra = readSpectra(filenames);
+		allData = AiffSound.readFromFile(filenames, spectra, listener);
+		loaded = allData.toArray(new Data[0]);
 		numOutputNeurons = 5;
 		type = Data.Type.AUDIO;
+		if (spectra != null)
+			writeSpectra(spectra);
 	}
 
 	/**
@@ -129,7 +217,8 @@ public class DVV {
 	}
 
 	/**
-	 * Preprocesses the whole data set.
+	 * Preprocesses the whole data set. The preprocessed data is held in a
+	 * {@link FeatureStore} outside of the heap.
 	 * 
 	 * @param resolution
 	 *            the data is to be sampled to
@@ -140,20 +229,176 @@ public class DVV {
 	 */
 	public void preprocess(int resolution, double overlap,
 			ActivationFunction scalingFunction) throws NoSuchFileException {
-		if (allData.size() > 0) {
-			try {
-				for (Data data : allData)
-					data.subsample(resolution, overlap, scalingFunction);
-			} catch (NoSuchFileException ex) {
-				throw new NoSuchFileException(ex.getFilename());
-			}
-			if (allData.iterator().next().isAudio())
+		preprocess(resolution, overlap, scalingFunction, null);
+	}
+
+	/**
+	 * Preprocesses the whole data set in parallel using all processors. The
+	 * preprocessed data is held in a {@link FeatureStore} outside of the heap.
+	 * If the data set has been preprocessed with the same options before and
+	 * that variant is still held in memory, it is reused at once. Otherwise
+	 * samples which have been preprocessed with the same options before are
+	 * taken from the {@link FeatureCache} next to the data set, newly
+	 * preprocessed ones are added to it. For AIFF files the cache holds the
+	 * averages of the bands, the spectra are cached at the import.
+	 * 
+	 * @param resolution
+	 *            the data is to be sampled to
+	 * @param overlap
+	 *            the overlap used when determining the window sizes
+	 * @param scalingFunction
+	 *            the function used to scale the subsampled data
+	 * @param listener
+	 *            receives the number of preprocessed samples, may be null
+	 */
+	public void preprocess(int resolution, double overlap,
+			ActivationFunction scalingFunction, ProgressListener listener)
+			throws NoSuchFileException {
+		if (loaded.length > 0) {
+			Data[] samples = loaded;
+			String key = FeatureCache.key(type, resolution, overlap,
+					scalingFunction);
+			FeatureStore variant = variants.get(key);
+			if (variant != null && variant.getCapacity() == samples.length
+					&& variant.isSinglePrecision() == singlePrecisionStore) {
+				store = variant;
+				for (int i = 0; i < samples.length; i++)
+					samples[i].attachStore(store, i, resolution, overlap);
+				if (listener != null)
+					listener.progress(samples.length, samples.length);
+			} else
+				preprocess(samples, key, resolution, overlap,
+						scalingFunction, listener);
+
+			if (samples[0].isAudio())
 				numInputNeurons = resolution;
 			else
 				numInputNeurons = resolution * resolution;
 		}
 	}
 
+	/**
+	 * Preprocesses the samples into a new store, which becomes the most
+	 * recently used variant.
+	 */
+	private void preprocess(Data[] samples, String key, int resolution,
+			double overlap, ActivationFunction scalingFunction,
+			ProgressListener listener) throws NoSuchFileException {
+		// The first sample determines the dimension of the store, every
+		// other vector is moved into it right after its subsampling, so
+		// the heap only holds a few at a time.
+		store = null;
+		variants.remove(key);
+		samples[0].subsample(resolution, overlap, scalingFunction);
+		int dimension = samples[0].getDataLength();
+		// Platz fuer die neue Variante schaffen, bevor sie angelegt wird
+		evictVariants((long) dimension * samples.length
+				* (singlePrecisionStore ? 4 : 8));
+		store = new FeatureStore(dimension, samples.length,
+				singlePrecisionStore);
+		samples[0].moveToStore(store, 0);
+		if (listener != null)
+			listener.progress(1, samples.length);
+
+		// Der Cache ist nur eine Beschleunigung, Fehler werden ignoriert
+		FeatureCache cache = null;
+		FeatureCache.Section cached = null;
+		long[] sums = null;
+		if (featureCacheEnabled && cacheFilename != null)
+			try {
+				sums = checksums(samples);
+				cache = new FeatureCache(new File(cacheFilename));
+				cached = cache.find(key);
+				if (cached != null
+						&& cached.getDimension() != store.getDimension()) {
+					cached.close();
+					cached = null;
+				}
+			} catch (IOException e) {
+				cache = null;
+			}
+
+		if (pool == null)
+			pool = new ForkJoinPool();
+		Preprocessing task = new Preprocessing(samples, resolution,
+				overlap, scalingFunction, store, cached, sums, listener,
+				Math.max(1, Math.min(256, samples.length
+						/ (8 * pool.getParallelism()))));
+		try {
+			pool.invoke(task);
+		} finally {
+			if (cached != null)
+				try {
+					cached.close();
+				} catch (IOException e) {
+				}
+		}
+		if (task.failure.get() != null)
+			throw new NoSuchFileException(task.failure.get().getFilename());
+
+		// Floats wuerden die Werte im Cache verfaelschen
+		if (cache != null && !singlePrecisionStore
+				&& (cached == null || task.hits.get() < samples.length - 1))
+			try {
+				int[] indices = new int[samples.length];
+				for (int i = 0; i < samples.length; i++)
+					indices[i] = samples[i].getSourceIndex();
+				cache.write(key, sums, indices, store);
+			} catch (IOException e) {
+				// Dann wird beim naechsten Mal eben neu berechnet
+			}
+		variants.put(key, store);
+	}
+
+	/**
+	 * Returns the store holding the preprocessed data.
+	 * 
+	 * @return the store or null if the data has not been preprocessed
+	 */
+	public FeatureStore getFeatureStore() {
+		return store;
+	}
+
+	/**
+	 * Sets the memory in bytes which may be used for keeping the data set
+	 * preprocessed with several options, so switching back to options used
+	 * before does not have to preprocess again. The least recently used
+	 * variants are dropped first, the current one is always kept. Variants
+	 * are held outside of the heap, so -XX:MaxDirectMemorySize has to leave
+	 * room for them. Defaults to {@link #DEFAULT_VARIANT_MEMORY}.
+	 * 
+	 * @param bytes
+	 *            the memory for all variants, 0 to keep only the current one
+	 */
+	public void setVariantMemory(long bytes) {
+		variantMemory = bytes;
+		evictVariants(0);
+	}
+
+	/**
+	 * Sets whether preprocessed data is kept in a file next to the data set,
+	 * so it can be reused by later sessions. Enabled by default. The spectra
+	 * of AIFF files are cached at the import, which is only controlled by
+	 * {@link #DVV(Collection, ProgressListener, boolean)}.
+	 * 
+	 * @param enabled
+	 *            true to use the cache file, false to always preprocess
+	 */
+	public void setFeatureCacheEnabled(boolean enabled) {
+		featureCacheEnabled = enabled;
+	}
+
+	/**
+	 * Sets whether the preprocessed data is stored as floats, which halves
+	 * the memory needed. Takes effect at the next preprocessing.
+	 * 
+	 * @param singlePrecision
+	 *            true to store floats, false to store doubles
+	 */
+	public void setSinglePrecisionStore(boolean singlePrecision) {
+		singlePrecisionStore = singlePrecision;
+	}
+
 	/**
 	 * Returns the size of the input vector.
 	 * 
@@ -196,6 +441,226 @@ public class DVV {
 		}
 	}
 
+	/**
+	 * Drops the least recently used variants except the current store until
+	 * the variants and the specified number of bytes fit into the memory.
+	 */
+	private void evictVariants(long needed) {
+		long used = 0;
+		for (FeatureStore variant : variants.values())
+			used += variant.getMemory();
+		Iterator<FeatureStore> it = variants.values().iterator();
+		while (used + needed > variantMemory && it.hasNext()) {
+			FeatureStore variant = it.next();
+			if (variant == store)
+				continue;
+			used -= variant.getMemory();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Returns the checksums of the files the samples were read from. Every
+	 * file is only read once per session.
+	 */
+	private long[] checksums(Data[] samples) throws IOException {
+		long[] result = new long[samples.length];
+		for (int i = 0; i < samples.length; i++)
+			result[i] = checksum(samples[i].getPath());
+		return result;
+	}
+
+	/** Returns the checksum of a file, which is only read once per session. */
+	private long checksum(String path) throws IOException {
+		if (checksums == null)
+			checksums = new HashMap<String, Long>();
+		Long checksum = checksums.get(path);
+		if (checksum == null) {
+			checksum = FeatureCache.checksum(path);
+			checksums.put(path, checksum);
+		}
+		return checksum;
+	}
+
+	/**
+	 * Returns the spectra of the files found in the feature cache by
+	 * filename.
+	 */
+	private Map<String, double[]> readSpectra(Collection<String> filenames) {
+		Map<String, double[]> spectra = new HashMap<String, double[]>();
+		// Der Cache ist nur eine Beschleunigung, Fehler werden ignoriert
+		try {
+			FeatureCache cache = new FeatureCache(new File(cacheFilename));
+			for (String key : cache.keys()) {
+				if (!FeatureCache.isSpectrumKey(key))
+					continue;
+				FeatureCache.Section section = cache.find(key);
+				try {
+					for (String name : filenames) {
+						if (spectra.containsKey(name))
+							continue;
+						int position = section.find(checksum(name), 0);
+						if (position >= 0) {
+							double[] spectrum = new double[section
+									.getDimension()];
+							section.get(position, spectrum);
+							spectra.put(name, spectrum);
+						}
+					}
+				} finally {
+					section.close();
+				}
+			}
+		} catch (IOException e) {
+			// Dann werden eben alle Dateien neu gelesen
+		}
+		return spectra;
+	}
+
+	/**
+	 * Adds the spectra of the sounds which have not been found in the cache,
+	 * in one section per length of the spectrum.
+	 */
+	private void writeSpectra(Map<String, double[]> cached) {
+		Map<Integer, List<AiffSound>> missing = new HashMap<Integer, List<AiffSound>>();
+		for (Data data : loaded) {
+			if (cached.containsKey(data.getPath()))
+				continue;
+			AiffSound sound = (AiffSound) data;
+			int length = sound.getSpectrum().length;
+			// Leere Spektren lassen sich nicht speichern
+			if (length == 0)
+				continue;
+			if (!missing.containsKey(length))
+				missing.put(length, new LinkedList<AiffSound>());
+			missing.get(length).add(sound);
+		}
+		try {
+			FeatureCache cache = new FeatureCache(new File(cacheFilename));
+			for (Map.Entry<Integer, List<AiffSound>> entry : missing
+					.entrySet()) {
+				List<AiffSound> sounds = entry.getValue();
+				FeatureStore spectra = new FeatureStore(entry.getKey(), sounds
+						.size(), false);
+				long[] sums = new long[sounds.size()];
+				int i = 0;
+				for (AiffSound sound : sounds) {
+					spectra.set(i, sound.getSpectrum());
+					sums[i++] = checksum(sound.getPath());
+				}
+				cache.write(FeatureCache.spectrumKey(entry.getKey()), sums,
+						new int[sounds.size()], spectra);
+			}
+		} catch (IOException e) {
+			// Dann wird beim naechsten Mal eben neu berechnet
+		}
+	}
+
+	/**
+	 * Subsamples a range of samples and moves them into the store. Samples
+	 * found in the cached section are copied from there instead. Ranges
+	 * larger than the grain are split in halves.
+	 */
+	private static class Preprocessing extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Data[] samples;
+		private final int resolution;
+		private final double overlap;
+		private final ActivationFunction scalingFunction;
+		private final FeatureStore store;
+		private final FeatureCache.Section cached;
+		private final long[] checksums;
+		private final ProgressListener listener;
+		private final int grain;
+		private final int from;
+		private final int to;
+		// Shared by all parts
+		private final AtomicInteger done;
+		final AtomicInteger hits;
+		final AtomicReference<NoSuchFileException> failure;
+
+		Preprocessing(Data[] samples, int resolution, double overlap,
+				ActivationFunction scalingFunction, FeatureStore store,
+				FeatureCache.Section cached, long[] checksums,
+				ProgressListener listener, int grain) {
+			this.samples = samples;
+			this.resolution = resolution;
+			this.overlap = overlap;
+			this.scalingFunction = scalingFunction;
+			this.store = store;
+			this.cached = cached;
+			this.checksums = checksums;
+			this.listener = listener;
+			this.grain = grain;
+			// The first sample has already been preprocessed
+			this.from = 1;
+			this.to = samples.length;
+			this.done = new AtomicInteger(1);
+			this.hits = new AtomicInteger();
+			this.failure = new AtomicReference<NoSuchFileException>();
+		}
+
+		private Preprocessing(Preprocessing parent, int from, int to) {
+			samples = parent.samples;
+			resolution = parent.resolution;
+			overlap = parent.overlap;
+			scalingFunction = parent.scalingFunction;
+			store = parent.store;
+			cached = parent.cached;
+			checksums = parent.checksums;
+			listener = parent.listener;
+			grain = parent.grain;
+			this.from = from;
+			this.to = to;
+			done = parent.done;
+			hits = parent.hits;
+			failure = parent.failure;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > grain) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Preprocessing(this, from, middle),
+						new Preprocessing(this, middle, to));
+				return;
+			}
+			double[] values = null;
+			int found = 0;
+			for (int i = from; i < to; i++) {
+				if (failure.get() != null)
+					return;
+				int position = cached == null ? -1 : cached.find(checksums[i],
+						samples[i].getSourceIndex());
+				if (position >= 0)
+					try {
+						if (values == null)
+							values = new double[cached.getDimension()];
+						cached.get(position, values);
+						store.set(i, values);
+						samples[i].attachStore(store, i, resolution, overlap);
+						found++;
+						continue;
+					} catch (IOException e) {
+						// Nicht lesbare Werte werden neu berechnet
+					}
+				try {
+					samples[i].subsample(resolution, overlap, scalingFunction);
+				} catch (NoSuchFileException ex) {
+					failure.compareAndSet(null, ex);
+					return;
+				}
+				samples[i].moveToStore(store, i);
+			}
+			hits.addAndGet(found);
+			int count = done.addAndGet(to - from);
+			if (listener != null)
+				listener.progress(count, samples.length);
+		}
+	}
+
 	/** Shuffles the specified data set. */
 	private void shuffle(Collection<Data> input) {
 		Data[] dataset = input.toArray(new Data[0]);
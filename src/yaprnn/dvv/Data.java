@@ -9,6 +9,9 @@ public abstract class Data {
 	public enum Type {AUDIO, PICTURE};
 
 	private Use use;
+	// The store holding the preprocessed data, if it has been moved there
+	private FeatureStore store;
+	private int storeIndex;
 
 	public abstract double[] getData();
 	public abstract String getName();
@@ -24,6 +27,126 @@ public abstract class Data {
 	public abstract Object previewRawData();
 	public abstract Object previewSubsampledData(int resolution, double overlap);
 
+	/**
+	 * Releases the preprocessed data, after it has been moved into a
+	 * {@link FeatureStore}. Afterwards {@link #getData()} has to return
+	 * {@link #getStoredData()}. The default implementation keeps the data.
+	 */
+	protected void releaseData() {
+	}
+
+	/**
+	 * Sets the subsampling options describing the preprocessed data. Called
+	 * when the data has been preprocessed, either by
+	 * {@link #subsample(int, double, ActivationFunction)} or by taking it from
+	 * a cache. The default implementation does nothing.
+	 *
+	 * @param resolution
+	 *            the resolution the data was sampled to
+	 * @param overlap
+	 *            the overlap used when determining the window sizes
+	 */
+	protected void setSubsamplingOptions(int resolution, double overlap) {
+	}
+
+	/**
+	 * Returns the index this object had in the file returned by
+	 * {@link #getPath()}. Together with the content of the file it identifies
+	 * the raw data. The default implementation returns 0 for files holding a
+	 * single object.
+	 *
+	 * @return the index in the file
+	 */
+	int getSourceIndex() {
+		return 0;
+	}
+
+	/**
+	 * Moves the preprocessed data into the specified store. Further calls of
+	 * {@link #getData()} return copies read from the store.
+	 *
+	 * @param store
+	 *            the store receiving the data
+	 * @param index
+	 *            the index of this object in the store
+	 */
+	void moveToStore(FeatureStore store, int index) {
+		store.set(index, getData());
+		this.store = store;
+		this.storeIndex = index;
+		releaseData();
+	}
+
+	/**
+	 * Uses data which has already been preprocessed and put into a store,
+	 * instead of subsampling again.
+	 *
+	 * @param store
+	 *            the store holding the data
+	 * @param index
+	 *            the index of this object in the store
+	 * @param resolution
+	 *            the resolution the data was sampled to
+	 * @param overlap
+	 *            the overlap used when determining the window sizes
+	 */
+	void attachStore(FeatureStore store, int index, int resolution,
+			double overlap) {
+		this.store = store;
+		this.storeIndex = index;
+		releaseData();
+		setSubsamplingOptions(resolution, overlap);
+	}
+
+	/**
+	 * Detaches this object from its store, for instance when it has been
+	 * preprocessed again.
+	 */
+	protected void clearStore() {
+		store = null;
+	}
+
+	/**
+	 * Returns a copy of the preprocessed data held in the store.
+	 *
+	 * @return the preprocessed data or null if it has not been moved into a
+	 *         store
+	 */
+	protected double[] getStoredData() {
+		return store == null ? null : store.get(storeIndex);
+	}
+
+	/**
+	 * Returns the length of the preprocessed data.
+	 *
+	 * @return the length of the data or -1 if it has not been preprocessed
+	 */
+	public int getDataLength() {
+		if (store != null)
+			return store.getDimension();
+		double[] data = getData();
+		return data == null ? -1 : data.length;
+	}
+
+	/**
+	 * Copies the preprocessed data into an array. Unlike {@link #getData()}
+	 * this does not allocate if the data is held in a store, so it should be
+	 * used for repeated access like training.
+	 *
+	 * @param target
+	 *            the array receiving the data
+	 * @param offset
+	 *            the index in target receiving the first value
+	 */
+	public void copyData(double[] target, int offset) {
+		if (store != null)
+			store.get(storeIndex, target, offset);
+		else {
+			double[] data = getData();
+			System.arraycopy(data, 0, target, offset, data.length);
+		}
+	}
+
 	/**
 	 * Marks this Data object as a part of the training data set.
 	 */
@@ -0,0 +1,535 @@
+package yaprnn.dvv;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import yaprnn.mlp.ActivationFunction;
+
+/**
+ * FeatureCache stores preprocessed data in a binary file next to the data
+ * set, so it does not have to be computed again in the next session. Every
+ * sample is identified by the checksum of the file it was read from and its
+ * index in that file, so the cache stays valid when files are added, removed
+ * or reordered, and a changed file is simply not found. The file consists of
+ * sections, one per set of subsampling options. The spectra of AIFF files
+ * are kept in sections of their own, one per length of the spectrum, so
+ * their import does not have to read the audio data and run the FFT again.
+ * The checksums still need a pass over every file. All values are
+ * little-endian:
+ *
+ * <pre>
+ * int      magic &quot;YFCF&quot;, version
+ * sections until the end of the file:
+ *   int    length of the UTF-8 key, bytes of the key
+ *   int    dimension d, number of samples n
+ *   n times long checksum, int index
+ *   padding to a multiple of 8 bytes
+ *   n * d doubles
+ * </pre>
+ *
+ * A section is written by rewriting the file into a temporary file, which
+ * then replaces it, so the old section with the same key is dropped and the
+ * samples stored there are kept. A section which has been cut off anyway is
+ * dropped then as well.
+ */
+class FeatureCache {
+
+	/** "YFCF" read as little-endian int. */
+	private final static int MAGIC = 0x46434659;
+	private final static int VERSION = 1;
+	private final static int HEADER_SIZE = 8;
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	// Die Schluessel der Vorverarbeitung beginnen mit dem Datentyp
+	private final static String SPECTRUM_KEY = "spectrum;";
+
+	private final File file;
+
+	/**
+	 * Identifies a sample by the checksum of its file and its index in there.
+	 */
+	private static class SampleKey {
+
+		private final long checksum;
+		private final int index;
+
+		SampleKey(long checksum, int index) {
+			this.checksum = checksum;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof SampleKey))
+				return false;
+			SampleKey other = (SampleKey) o;
+			return checksum == other.checksum && index == other.index;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (checksum ^ (checksum >>> 32)) * 31 + index;
+		}
+	}
+
+	/**
+	 * The preprocessed data of one set of subsampling options read from the
+	 * file. The values are read from the file when needed, so the section
+	 * has to be closed after use.
+	 */
+	static class Section implements Closeable {
+
+		private final FileChannel channel;
+		private final int dimension;
+		private final Map<SampleKey, Integer> positions;
+		private final long valuesStart;
+		// Every thread reads the values of a sample into its own buffer
+		private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+			@Override
+			protected ByteBuffer initialValue() {
+				return buffer(8 * dimension);
+			}
+		};
+
+		private Section(FileChannel channel, int dimension,
+				Map<SampleKey, Integer> positions, long valuesStart) {
+			this.channel = channel;
+			this.dimension = dimension;
+			this.positions = positions;
+			this.valuesStart = valuesStart;
+		}
+
+		/**
+		 * Returns the dimension of the stored samples.
+		 *
+		 * @return the dimension
+		 */
+		int getDimension() {
+			return dimension;
+		}
+
+		/**
+		 * Returns the position of a sample in this section.
+		 *
+		 * @param checksum
+		 *            the checksum of the file of the sample
+		 * @param index
+		 *            the index of the sample in its file
+		 * @return the position or -1 if the sample is not stored
+		 */
+		int find(long checksum, int index) {
+			Integer position = positions.get(new SampleKey(checksum, index));
+			return position == null ? -1 : position.intValue();
+		}
+
+		/**
+		 * Copies the values of a sample. May be called by several threads.
+		 *
+		 * @param position
+		 *            the position returned by {@link #find(long, int)}
+		 * @param target
+		 *            the array receiving the values
+		 * @throws IOException
+		 *             if the file can not be read
+		 */
+		void get(int position, double[] target) throws IOException {
+			ByteBuffer buffer = buffers.get();
+			buffer.clear();
+			long start = valuesStart + 8L * dimension * position;
+			while (buffer.hasRemaining())
+				if (channel.read(buffer, start + buffer.position()) < 0)
+					throw new EOFException();
+			buffer.flip();
+			buffer.asDoubleBuffer().get(target, 0, dimension);
+		}
+
+		/**
+		 * Closes the file of this section.
+		 *
+		 * @throws IOException
+		 *             if the file can not be closed
+		 */
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Constructs a cache using the specified file, which is created when the
+	 * first section is written.
+	 *
+	 * @param file
+	 *            the cache file
+	 */
+	FeatureCache(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns the key of the sections holding data preprocessed with the
+	 * specified options.
+	 *
+	 * @param type
+	 *            the type of the data
+	 * @param resolution
+	 *            the resolution
+	 * @param overlap
+	 *            the overlap
+	 * @param scalingFunction
+	 *            the function used to scale the subsampled data
+	 * @return the key
+	 */
+	static String key(Data.Type type, int resolution, double overlap,
+			ActivationFunction scalingFunction) {
+		return type + ";" + resolution + ";"
+				+ Long.toHexString(Double.doubleToLongBits(overlap)) + ";"
+				+ scalingFunction.getClass().getName() + ";" + scalingFunction;
+	}
+
+	/**
+	 * Returns the key of the section holding spectra of the specified length.
+	 *
+	 * @param length
+	 *            the length of the spectra
+	 * @return the key
+	 */
+	static String spectrumKey(int length) {
+		return SPECTRUM_KEY + length;
+	}
+
+	/**
+	 * Returns whether a key belongs to a section holding spectra.
+	 *
+	 * @param key
+	 *            the key
+	 * @return true if it is a key returned by {@link #spectrumKey(int)}
+	 */
+	static boolean isSpectrumKey(String key) {
+		return key.startsWith(SPECTRUM_KEY);
+	}
+
+	/**
+	 * Computes the checksum of a file, which consists of its CRC-32 and its
+	 * length.
+	 *
+	 * @param filename
+	 *            the name of the file
+	 * @return the checksum
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	static long checksum(String filename) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			long length = channel.size();
+			CRC32 crc = new CRC32();
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+			return (length << 32) ^ crc.getValue();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the keys of all complete sections.
+	 *
+	 * @return the keys, empty if the file does not exist
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	List<String> keys() throws IOException {
+		List<String> keys = new ArrayList<String>();
+		if (!file.exists())
+			return keys;
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			if (hasHeader(channel))
+				for (long position = HEADER_SIZE, end; (end = sectionEnd(
+						channel, position)) >= 0; position = end)
+					keys.add(readKey(channel, position));
+			return keys;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the section with the specified key, which has to be closed
+	 * after use.
+	 *
+	 * @param key
+	 *            the key, see {@link #key}
+	 * @return the section or null if the file does not contain one
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	Section find(String key) throws IOException {
+		if (!file.exists())
+			return null;
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		Section section = null;
+		try {
+			FileChannel channel = in.getChannel();
+			long start = hasHeader(channel) ? findStart(channel, key) : -1;
+			if (start >= 0)
+				section = readSection(channel, start);
+			return section;
+		} finally {
+			// Der Abschnitt schliesst die Datei selbst
+			if (section == null)
+				in.close();
+		}
+	}
+
+	/**
+	 * Writes a section holding the samples of a store. It replaces the
+	 * section with the same key, the samples of that one which are not in
+	 * the store are taken over.
+	 *
+	 * @param key
+	 *            the key, see {@link #key}
+	 * @param checksums
+	 *            the checksums of the files of the samples
+	 * @param indices
+	 *            the indices of the samples in their files
+	 * @param store
+	 *            the preprocessed data of the samples
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	void write(String key, long[] checksums, int[] indices, FeatureStore store)
+			throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		RandomAccessFile out = new RandomAccessFile(temp, "rw");
+		boolean written = false;
+		try {
+			FileChannel target = out.getChannel();
+			target.truncate(0);
+			ByteBuffer header = buffer(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			long position = writeFully(target, header, 0);
+
+			RandomAccessFile in = file.exists() ? new RandomAccessFile(file,
+					"r") : null;
+			try {
+				Section old = null;
+				if (in != null && hasHeader(in.getChannel())) {
+					// Die anderen Abschnitte werden unveraendert uebernommen
+					FileChannel source = in.getChannel();
+					long start = -1;
+					for (long section = HEADER_SIZE, end; (end = sectionEnd(
+							source, section)) >= 0; section = end)
+						if (key.equals(readKey(source, section)))
+							start = section;
+						else
+							position = transfer(source, section, end, target,
+									position);
+					if (start >= 0)
+						old = readSection(source, start);
+				}
+				writeSection(target, position, key, checksums, indices, store,
+						old);
+			} finally {
+				if (in != null)
+					in.close();
+			}
+			written = true;
+		} finally {
+			out.close();
+			if (!written)
+				temp.delete();
+		}
+		Files.move(temp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Writes a section at position holding the samples of the store and the
+	 * samples of the old section, which are not in the store.
+	 */
+	private static void writeSection(FileChannel channel, long position,
+			String key, long[] checksums, int[] indices, FeatureStore store,
+			Section old) throws IOException {
+		byte[] keyBytes = key.getBytes(UTF8);
+		int dimension = store.getDimension();
+		int count = store.getCapacity();
+		// Alte Eintraege, deren Dateien gerade nicht geladen sind
+		Map<SampleKey, Integer> kept = new HashMap<SampleKey, Integer>();
+		if (old != null && old.getDimension() == dimension) {
+			Set<SampleKey> current = new HashSet<SampleKey>(count * 2);
+			for (int i = 0; i < count; i++)
+				current.add(new SampleKey(checksums[i], indices[i]));
+			for (Map.Entry<SampleKey, Integer> entry : old.positions
+					.entrySet())
+				if (!current.contains(entry.getKey()))
+					kept.put(entry.getKey(), entry.getValue());
+		}
+		int total = count + kept.size();
+
+		long keysEnd = position + 12 + keyBytes.length + 12L * total;
+		ByteBuffer head = buffer((int) (align(keysEnd) - position));
+		head.putInt(keyBytes.length).put(keyBytes);
+		head.putInt(dimension).putInt(total);
+		for (int i = 0; i < count; i++)
+			head.putLong(checksums[i]).putInt(indices[i]);
+		for (SampleKey sample : kept.keySet())
+			head.putLong(sample.checksum).putInt(sample.index);
+		head.position(head.limit()).flip();
+		position = writeFully(channel, head, position);
+
+		// Die Werte werden in Bloecken von etwa 1 MB geschrieben
+		int samplesPerBlock = Math.max(1, (1 << 20) / 8 / dimension);
+		ByteBuffer block = buffer(samplesPerBlock * dimension * 8);
+		double[] values = new double[dimension];
+		Iterator<Integer> oldPositions = kept.values().iterator();
+		for (int i = 0; i < total; i++) {
+			if (i < count)
+				store.get(i, values, 0);
+			else
+				old.get(oldPositions.next(), values);
+			for (int k = 0; k < dimension; k++)
+				block.putDouble(values[k]);
+			if (!block.hasRemaining() || i == total - 1) {
+				block.flip();
+				position = writeFully(channel, block, position);
+				block.clear();
+			}
+		}
+	}
+
+	/** Returns the start of the last complete section with key, or -1. */
+	private static long findStart(FileChannel channel, String key)
+			throws IOException {
+		long start = -1;
+		for (long position = HEADER_SIZE, end; (end = sectionEnd(channel,
+				position)) >= 0; position = end)
+			if (key.equals(readKey(channel, position)))
+				start = position;
+		return start;
+	}
+
+	private static boolean hasHeader(FileChannel channel) throws IOException {
+		ByteBuffer header = read(channel, 0, HEADER_SIZE);
+		return header != null && header.getInt() == MAGIC
+				&& header.getInt() == VERSION;
+	}
+
+	/**
+	 * Returns the end of the section at position, or -1 if there is no
+	 * complete section.
+	 */
+	private static long sectionEnd(FileChannel channel, long position)
+			throws IOException {
+		ByteBuffer length = read(channel, position, 4);
+		if (length == null)
+			return -1;
+		int keyLength = length.getInt();
+		if (keyLength < 0)
+			return -1;
+		ByteBuffer sizes = read(channel, position + 4 + keyLength, 8);
+		if (sizes == null)
+			return -1;
+		long dimension = sizes.getInt();
+		long count = sizes.getInt();
+		if (dimension <= 0 || count < 0)
+			return -1;
+		long end = align(position + 12 + keyLength + 12 * count) + 8
+				* dimension * count;
+		return end <= channel.size() ? end : -1;
+	}
+
+	/** Returns the key of the section at position, or null. */
+	private static String readKey(FileChannel channel, long position)
+			throws IOException {
+		ByteBuffer length = read(channel, position, 4);
+		if (length == null)
+			return null;
+		ByteBuffer key = read(channel, position + 4, length.getInt());
+		return key == null ? null : UTF8.decode(key).toString();
+	}
+
+	/** Reads the section at position, or returns null if it is too large. */
+	private static Section readSection(FileChannel channel, long position)
+			throws IOException {
+		int keyLength = read(channel, position, 4).getInt();
+		ByteBuffer sizes = read(channel, position + 4 + keyLength, 8);
+		int dimension = sizes.getInt();
+		int count = sizes.getInt();
+		long keysStart = position + 12 + keyLength;
+		long valuesStart = align(keysStart + 12L * count);
+		if (12L * count > Integer.MAX_VALUE)
+			return null;
+
+		ByteBuffer keys = read(channel, keysStart, 12 * count);
+		Map<SampleKey, Integer> positions = new HashMap<SampleKey, Integer>(
+				count * 2);
+		for (int i = 0; i < count; i++)
+			positions.put(new SampleKey(keys.getLong(), keys.getInt()), i);
+		return new Section(channel, dimension, positions, valuesStart);
+	}
+
+	/** Copies the bytes from start to end of source to position of target. */
+	private static long transfer(FileChannel source, long start, long end,
+			FileChannel target, long position) throws IOException {
+		while (start < end) {
+			long count = source.transferTo(start, end - start, target
+					.position(position));
+			if (count <= 0)
+				throw new EOFException();
+			start += count;
+			position += count;
+		}
+		return position;
+	}
+
+	/** Reads size bytes at position, returns null at the end of the file. */
+	private static ByteBuffer read(FileChannel channel, long position,
+			int size) throws IOException {
+		if (size < 0 || position + size > channel.size())
+			return null;
+		ByteBuffer buffer = buffer(size);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				return null;
+		buffer.flip();
+		return buffer;
+	}
+
+	private static long writeFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+		return position;
+	}
+
+	private static ByteBuffer buffer(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+}
@@ -0,0 +1,179 @@
+package yaprnn.dvv;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * FeatureStore holds the preprocessed data of many samples outside of the
+ * heap. Every sample occupies one contiguous segment of values in a direct
+ * buffer, so the garbage collector neither has to trace nor to copy them.
+ * The values are stored as doubles or, to halve the memory, as floats. Since
+ * a single buffer is limited to 2 GB, the samples are spread over several
+ * buffers. Different samples may be set by several threads at once.
+ * <p>
+ * Direct buffers are limited by the JVM option -XX:MaxDirectMemorySize,
+ * which defaults to the maximum heap size.
+ */
+public class FeatureStore {
+
+	// Maximum size of a single buffer in bytes
+	private final static int CHUNK_BYTES = 1 << 30;
+
+	private final int dimension;
+	private final int capacity;
+	private final boolean singlePrecision;
+	private final int samplesPerChunk;
+	private final DoubleBuffer[] doubles;
+	private final FloatBuffer[] floats;
+
+	/**
+	 * Constructs an empty store.
+	 *
+	 * @param dimension
+	 *            the number of values of every sample
+	 * @param capacity
+	 *            the number of samples
+	 * @param singlePrecision
+	 *            true to store the values as floats
+	 */
+	public FeatureStore(int dimension, int capacity, boolean singlePrecision) {
+		if (dimension <= 0 || capacity < 0)
+			throw new IllegalArgumentException("Invalid size: " + capacity
+					+ " x " + dimension);
+		int bytes = singlePrecision ? 4 : 8;
+		if (dimension > CHUNK_BYTES / bytes)
+			throw new IllegalArgumentException("Invalid dimension: "
+					+ dimension);
+		this.dimension = dimension;
+		this.capacity = capacity;
+		this.singlePrecision = singlePrecision;
+		samplesPerChunk = CHUNK_BYTES / bytes / dimension;
+		int chunks = (capacity + samplesPerChunk - 1) / samplesPerChunk;
+		if (singlePrecision) {
+			doubles = null;
+			floats = new FloatBuffer[chunks];
+			for (int c = 0; c < chunks; c++)
+				floats[c] = allocate(c, 4).asFloatBuffer();
+		} else {
+			doubles = new DoubleBuffer[chunks];
+			floats = null;
+			for (int c = 0; c < chunks; c++)
+				doubles[c] = allocate(c, 8).asDoubleBuffer();
+		}
+	}
+
+	/**
+	 * Stores the values of a sample.
+	 *
+	 * @param index
+	 *            the index of the sample
+	 * @param values
+	 *            the values, whose length must equal the dimension
+	 */
+	public void set(int index, double[] values) {
+		if (values.length != dimension)
+			throw new IllegalArgumentException("Invalid dimension: "
+					+ values.length);
+		int chunk = chunk(index);
+		int start = (index % samplesPerChunk) * dimension;
+		if (singlePrecision) {
+			FloatBuffer buffer = floats[chunk];
+			for (int i = 0; i < dimension; i++)
+				buffer.put(start + i, (float) values[i]);
+		} else {
+			DoubleBuffer buffer = doubles[chunk];
+			for (int i = 0; i < dimension; i++)
+				buffer.put(start + i, values[i]);
+		}
+	}
+
+	/**
+	 * Returns a copy of the values of a sample.
+	 *
+	 * @param index
+	 *            the index of the sample
+	 * @return the values
+	 */
+	public double[] get(int index) {
+		double[] result = new double[dimension];
+		get(index, result, 0);
+		return result;
+	}
+
+	/**
+	 * Copies the values of a sample into an array without allocating.
+	 * Samples which have not been set consist of zeros.
+	 *
+	 * @param index
+	 *            the index of the sample
+	 * @param target
+	 *            the array receiving the values
+	 * @param offset
+	 *            the index in target receiving the first value
+	 */
+	public void get(int index, double[] target, int offset) {
+		int chunk = chunk(index);
+		int start = (index % samplesPerChunk) * dimension;
+		if (singlePrecision) {
+			FloatBuffer buffer = floats[chunk];
+			for (int i = 0; i < dimension; i++)
+				target[offset + i] = buffer.get(start + i);
+		} else {
+			DoubleBuffer buffer = doubles[chunk];
+			for (int i = 0; i < dimension; i++)
+				target[offset + i] = buffer.get(start + i);
+		}
+	}
+
+	/**
+	 * Returns the number of values of every sample.
+	 *
+	 * @return the dimension
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Returns the number of samples.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns true if the values are stored as floats.
+	 *
+	 * @return true if the values are stored in single precision
+	 */
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	/**
+	 * Returns the number of bytes needed for all samples.
+	 *
+	 * @return the size of the store in bytes
+	 */
+	public long getMemory() {
+		return (long) capacity * dimension * (singlePrecision ? 4 : 8);
+	}
+
+	private int chunk(int index) {
+		if (index < 0 || index >= capacity)
+			throw new IndexOutOfBoundsException("Invalid index: " + index);
+		return index / samplesPerChunk;
+	}
+
+	/** Allocates the buffer of a chunk in the native byte order. */
+	private ByteBuffer allocate(int chunk, int bytes) {
+		int samples = Math.min(samplesPerChunk, capacity - chunk
+				* samplesPerChunk);
+		return ByteBuffer.allocateDirect(samples * dimension * bytes).order(
+				ByteOrder.nativeOrder());
+	}
+}
@@ -1,11 +1,12 @@
 package yaprnn.dvv;
 
-import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -14,7 +15,8 @@ import yaprnn.mlp.ActivationFunction;
 
 /** IdxPicture is the class for holding a single image loaded from an IDX file.
  *  It provides funcionality for previewing raw and subsampled data and for
- *  subsampling and scaling the data.
+ *  subsampling and scaling the data. The pixels of images read from a file
+ *  are not copied but read from the memory-mapped file.
  */
 public class IdxPicture extends Data {
 
@@ -22,12 +24,17 @@ public class IdxPicture extends Data {
 	private final static int LABEL_MAGIC_NUMBER = 2049;
 
 	private double[] data;
-	private final byte[][] rawData;
+	// The pixels are stored row by row starting at offset
+	private final ByteBuffer pixels;
+	private final int offset;
+	private final int rows;
+	private final int cols;
 	private final String label;
 	private final int target;
 	private final String filename;
 	private final int fileIndex;
 	private String subsamplingOptions;
+	private SoftReference<int[]> summedAreaTable;
 
 	/** Constructs an IdxPicture object from the specified data.
 	 *
@@ -37,7 +44,24 @@ public class IdxPicture extends Data {
 	 *  @param fileIndex the index this picture had in the file
 	 */
 	public IdxPicture(byte[][] rawData, String label, String filename, int fileIndex) {
-		this.rawData = rawData;
+		this(toBuffer(rawData), 0, rawData.length, rawData[0].length, label, filename, fileIndex);
+	}
+
+	/** Constructs an IdxPicture object from a view of the specified buffer.
+	 *
+	 *  @param pixels the buffer holding the image data row by row
+	 *  @param offset the index of the first pixel in pixels
+	 *  @param rows the number of rows
+	 *  @param cols the number of columns
+	 *  @param label   the classifying label
+	 *  @param filename the file this picture was loaded from
+	 *  @param fileIndex the index this picture had in the file
+	 */
+	IdxPicture(ByteBuffer pixels, int offset, int rows, int cols, String label, String filename, int fileIndex) {
+		this.pixels = pixels;
+		this.offset = offset;
+		this.rows = rows;
+		this.cols = cols;
 		this.label = label;
 		this.filename = filename;
 		this.fileIndex = fileIndex;
@@ -46,20 +70,43 @@ public class IdxPicture extends Data {
 	}
 
 	/** Returns the completely preprocessed data of this image.
+	 *
+	 *  If the data has been moved into a store, a copy is returned.
 	 *
 	 *  @return the preprocessed data
 	 */
 	@Override
 	public double[] getData() {
-		return data;
+		return data != null ? data : getStoredData();
 	}
 
-	/** Returns the raw data for previewing.
+	/** Returns the index this picture had in its file.
 	 *
-	 *  @return the raw data
+	 *  @return the index in the file
+	 */
+	@Override
+	int getSourceIndex() {
+		return fileIndex;
+	}
+
+	/** Releases the preprocessed data after it has been moved into a store.
+	 */
+	@Override
+	protected void releaseData() {
+		data = null;
+	}
+
+	/** Returns the raw data for previewing. The array is copied from the
+	 *  image data.
+	 *
+	 *  @return the raw data as byte[rows][cols]
 	 */
 	@Override
 	public Object previewRawData() {
+		byte[][] rawData = new byte[rows][cols];
+		for(int i=0; i<rows; i++)
+			for(int j=0; j<cols; j++)
+				rawData[i][j] = pixels.get(offset + i*cols + j);
 		return rawData;
 	}
 	
@@ -79,7 +126,7 @@ public class IdxPicture extends Data {
 	 */
 	@Override
 	public Object previewSubsampledData(int resolution, double overlap) {
-		if(resolution <= 0 || resolution > rawData.length || overlap < 0.0 || overlap > 0.95)
+		if(resolution <= 0 || resolution > rows || overlap < 0.0 || overlap > 0.95)
 			return null;
 		final int[][] subData = subsample(resolution, overlap);
 		final byte[][] result = new byte[resolution][resolution];
@@ -98,13 +145,24 @@ public class IdxPicture extends Data {
 	@Override
 	public void subsample(int resolution, double overlap,
 				ActivationFunction scalingFunction) throws NoSuchFileException{
-			if(resolution <= 0 || resolution > rawData.length || overlap < 0.0 || overlap > 0.95)
+			if(resolution <= 0 || resolution > rows || overlap < 0.0 || overlap > 0.95)
 				throw new NoSuchFileException(Integer.toString(this.fileIndex));
 		final int[][] subData = subsample(resolution, overlap);
 		data = new double[resolution*resolution];
 		for(int i=0; i<resolution; i++)
 			for(int j=0; j<resolution; j++)
 				data[i*resolution + j] = scalingFunction.compute(subData[i][j]);
+		clearStore();
+		setSubsamplingOptions(resolution, overlap);
+	}
+
+	/** Sets the subsampling options describing the preprocessed data.
+	 *
+	 *  @param resolution the resolution the data was sampled to
+	 *  @param overlap    the overlap used when determining the window sizes
+	 */
+	@Override
+	protected void setSubsamplingOptions(int resolution, double overlap) {
 		DecimalFormat f = new DecimalFormat("#0.00"); 
 		this.subsamplingOptions = "Resolution: " + resolution + "       Overlap: " + f.format(overlap);
 	}
@@ -184,92 +242,83 @@ public class IdxPicture extends Data {
 	 */
 	public static Collection<Data> readFromFile(String dataFilename, String labelFilename)
 				throws NoSuchFileException, InvalidFileException, FileMismatchException, IOException {
-		DataInputStream dataInput = null, labelInput = null;
-		int numImagesData = 0, numImagesLabel = 0;
-		try {
-			try {
-				dataInput = new DataInputStream(new FileInputStream(dataFilename));
-			} catch(FileNotFoundException e) {
-				throw new NoSuchFileException(dataFilename);
-			}
-			try {
-				labelInput = new DataInputStream(new FileInputStream(labelFilename));
-			} catch(FileNotFoundException e) {
-				throw new NoSuchFileException(labelFilename);
-			}
-			try {
-				final int dataMagicNumber = dataInput.readInt();
-				if(dataMagicNumber != DATA_MAGIC_NUMBER)
-					throw new InvalidFileException(dataFilename);
-				numImagesData = dataInput.readInt();
-			} catch(EOFException e) {
-				throw new InvalidFileException(dataFilename);
-			}
-			try {
-				final int labelMagicNumber = labelInput.readInt();
-				if(labelMagicNumber != LABEL_MAGIC_NUMBER)
-					throw new InvalidFileException(labelFilename);
-				numImagesLabel = labelInput.readInt();
-			} catch(EOFException e) {
+		final ByteBuffer dataBuffer = map(dataFilename);
+		final ByteBuffer labelBuffer = map(labelFilename);
+
+		if(dataBuffer.limit() < 16 || dataBuffer.getInt(0) != DATA_MAGIC_NUMBER)
+			throw new InvalidFileException(dataFilename);
+		if(labelBuffer.limit() < 8 || labelBuffer.getInt(0) != LABEL_MAGIC_NUMBER)
+			throw new InvalidFileException(labelFilename);
+		final int numImages = dataBuffer.getInt(4);
+		if(numImages != labelBuffer.getInt(4))
+			throw new FileMismatchException(dataFilename, labelFilename);
+
+		final int numRows = dataBuffer.getInt(8);
+		final int numCols = dataBuffer.getInt(12);
+		final int imageSize = numRows * numCols;
+		if(numImages < 0 || numRows <= 0 || numCols <= 0
+				|| 16 + (long)numImages * imageSize > dataBuffer.limit())
+			throw new InvalidFileException(dataFilename);
+		if(8 + (long)numImages > labelBuffer.limit())
+			throw new InvalidFileException(labelFilename);
+
+		Collection<Data> result = new ArrayList<Data>(numImages);
+		for(int i=0; i<numImages; i++) {
+			final byte target = labelBuffer.get(8 + i);
+			if(target < 0 || target > 9)
 				throw new InvalidFileException(labelFilename);
-			}
-			if(numImagesData != numImagesLabel)
-				throw new FileMismatchException(dataFilename, labelFilename);
-			return readDataFromFile(dataInput, labelInput, numImagesData, dataFilename, labelFilename);
-		} finally {
-			if(dataInput != null)
-				dataInput.close();
-			if(labelInput != null)
-				labelInput.close();
+			result.add(new IdxPicture(dataBuffer, 16 + i*imageSize, numRows, numCols,
+					"" + target, dataFilename, i));
 		}
+		return result;
 	}
 
-	private static Collection<Data> readDataFromFile(DataInputStream dataInput, DataInputStream labelInput,
-				int numImages, String dataFilename, String labelFilename)
-				throws InvalidFileException, IOException {
-		Collection<Data> result = new ArrayList<Data>(numImages);
+	/** Maps the specified file read-only into memory. The mapping stays valid
+	 *  after the file has been closed.
+	 */
+	private static ByteBuffer map(String filename) throws NoSuchFileException, IOException {
+		RandomAccessFile file;
 		try {
-			final int numRows = dataInput.readInt();
-			final int numCols = dataInput.readInt();
-			for(int i=0; i<numImages; i++) {
-				byte[][] image = new byte[numRows][numCols];
-				for(int j=0; j<numRows; j++) {
-					int bytesRead = 0;
-					while(bytesRead != numCols) {
-						final int read = dataInput.read(image[j], bytesRead, numCols-bytesRead);
-						if(read == -1)
-							throw new InvalidFileException(dataFilename);
-						bytesRead += read;
-					}
-				}
-				final byte target = labelInput.readByte();
-				if(target < 0 || target > 9)
-					throw new InvalidFileException(labelFilename);
-				result.add(new IdxPicture(image, "" + target, dataFilename, i));
-			}
-		} catch(EOFException e) {
-			throw new InvalidFileException(labelFilename);
+			file = new RandomAccessFile(filename, "r");
+		} catch(FileNotFoundException e) {
+			throw new NoSuchFileException(filename);
 		}
-		return result;
+		try {
+			// IDX files are big-endian, the default order of a ByteBuffer
+			return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		} finally {
+			file.close();
+		}
+	}
+
+	private static ByteBuffer toBuffer(byte[][] rawData) {
+		final int cols = rawData[0].length;
+		ByteBuffer buffer = ByteBuffer.allocate(rawData.length * cols);
+		for(int i=0; i<rawData.length; i++)
+			buffer.put(rawData[i], 0, cols);
+		return buffer;
 	}
 
 	private int[][] subsample(int resolution, double overlap) {
+		final int[] sums = summedAreaTable();
+		final int width = cols + 1;
 		int[][] subData = new int[resolution][resolution];
-		double scaling = rawData.length / (double)resolution;
+		double scaling = rows / (double)resolution;
 		int windowSize = (int)Math.round(scaling * (1+overlap));
 		for(int i=0; i<resolution; i++) 
 			for(int j=0; j<resolution; j++) {
 				int x0 = (int)(j * scaling);
 				int y0 = (int)(i * scaling);
-				int xsize = x0 + windowSize < rawData[0].length
-					? windowSize : rawData[0].length - x0;
-				int ysize = y0 + windowSize < rawData.length
-							? windowSize : rawData.length - y0;
+				int xsize = x0 + windowSize < cols
+					? windowSize : cols - x0;
+				int ysize = y0 + windowSize < rows
+							? windowSize : rows - y0;
 				int size = xsize < ysize ? xsize : ysize;
+				// Die Summe des Fensters ergibt sich aus vier Eintraegen der Tabelle
 				subData[i][j] = 0;
-				for(int k=y0; k<y0+size; k++)
-					for(int l=x0; l<x0+size; l++)
-						subData[i][j] += uByteToInt(rawData[k][l]);
+				if(size > 0)
+					subData[i][j] = sums[(y0+size)*width + x0+size] - sums[y0*width + x0+size]
+							- sums[(y0+size)*width + x0] + sums[y0*width + x0];
 				subData[i][j] /= size*size;
 			}
 		
@@ -277,6 +326,29 @@ public class IdxPicture extends Data {
 		return subData;
 	}
 
+	/** Returns the summed-area table of the pixels, which is computed on
+	 *  first use. Entry (y, x) of the table with cols+1 columns holds the sum
+	 *  of all pixels above and left of row y and column x. The table is only
+	 *  softly referenced, so the tables of a large data set do not fill the
+	 *  heap.
+	 */
+	private int[] summedAreaTable() {
+		int[] sums = summedAreaTable != null ? summedAreaTable.get() : null;
+		if(sums != null)
+			return sums;
+		final int width = cols + 1;
+		sums = new int[(rows+1) * width];
+		for(int k=0; k<rows; k++) {
+			int rowSum = 0;
+			for(int l=0; l<cols; l++) {
+				rowSum += uByteToInt(pixels.get(offset + k*cols + l));
+				sums[(k+1)*width + l+1] = sums[k*width + l+1] + rowSum;
+			}
+		}
+		summedAreaTable = new SoftReference<int[]>(sums);
+		return sums;
+	}
+
 	private int uByteToInt(byte b) {
 		int i = b;
 		return i >= 0 ? i : 128 + (i & 0x7F);
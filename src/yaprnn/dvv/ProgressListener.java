@@ -0,0 +1,19 @@
+package yaprnn.dvv;
+
+/**
+ * Receives the progress of a long running operation of the {@link DVV}. The
+ * methods may be called by any thread.
+ */
+public interface ProgressListener {
+
+	/**
+	 * Reports the number of processed items.
+	 *
+	 * @param done
+	 *            the number of items processed so far
+	 * @param total
+	 *            the number of all items
+	 */
+	public void progress(int done, int total);
+
+}
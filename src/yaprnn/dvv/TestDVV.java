@@ -1,8 +1,16 @@
 package yaprnn.dvv;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
+import yaprnn.mlp.Linear;
 import yaprnn.mlp.TangensHyperbolicus;
 
 class TestDVV {
@@ -15,9 +23,12 @@ class TestDVV {
 		TestDVV.test03();
 		TestDVV.test04();
 		TestDVV.test05();
+		TestDVV.test07();
+		TestDVV.test08();
 		//TestDVV.testSound01();
 		//TestDVV.test();
 		TestDVV.test06();
+		TestDVV.test09();
 	}
 
 	public static void test01() {
@@ -133,6 +144,141 @@ class TestDVV {
 		}
 	}
 
+	public static void test07() {
+		byte[][] img = new byte[20][20];
+		for(int i=0; i<img.length; i++)
+			for(int j=0; j<img.length; j++)
+				img[i][j] = (byte)(i * j);
+		IdxPicture pic = new IdxPicture(img, "3", "file", 0);
+		try {
+			pic.subsample(5, 0.2, tanh);
+		} catch (Exception ex){
+			System.out.println("Error in DVV-Test 07");
+			return;
+		}
+		double[] expected = pic.getData().clone();
+		FeatureStore store = new FeatureStore(expected.length, 2, false);
+		pic.moveToStore(store, 1);
+		double[] copy = new double[expected.length + 1];
+		pic.copyData(copy, 1);
+		for(int i=0; i<expected.length; i++)
+			if(pic.getData()[i] != expected[i] || copy[i + 1] != expected[i])
+				System.out.println("Error in DVV-Test 07");
+		if(pic.getDataLength() != expected.length)
+			System.out.println("Error in DVV-Test 07");
+
+		FeatureStore floats = new FeatureStore(expected.length, 1, true);
+		floats.set(0, expected);
+		for(int i=0; i<expected.length; i++)
+			if(floats.get(0)[i] != (float)expected[i])
+				System.out.println("Error in DVV-Test 07");
+	}
+
+	/** Tests the FeatureCache with temporary files. */
+	public static void test08() {
+		File a = null, b = null, file = null;
+		try {
+			a = File.createTempFile("yaprnn", ".idx");
+			b = File.createTempFile("yaprnn", ".idx");
+			file = File.createTempFile("yaprnn", ".features");
+			file.delete();
+			writeFile(a, 1);
+			writeFile(b, 2);
+			long ca = FeatureCache.checksum(a.getPath());
+			long cb = FeatureCache.checksum(b.getPath());
+			long[] sums = { ca, ca, cb };
+			int[] indices = { 0, 1, 0 };
+			String key1 = FeatureCache.key(Data.Type.PICTURE, 5, 0.2, tanh);
+			String key2 = FeatureCache.key(Data.Type.PICTURE, 10, 0.2, tanh);
+			FeatureCache cache = new FeatureCache(file);
+
+			// Schreiben und wieder lesen
+			cache.write(key1, sums, indices, createStore(3, 0));
+			if(!checkSection(cache, key1, sums, indices, new int[] { 0, 1, 2 })
+					|| cache.find(key2) != null)
+				System.out.println("Error in DVV-Test 08 round trip");
+
+			// Gleiche Schluessel ersetzen den alten Abschnitt
+			long length = file.length();
+			cache.write(key1, sums, indices, createStore(3, 0));
+			if(file.length() != length)
+				System.out.println("Error in DVV-Test 08 replace");
+
+			// Nicht geladene Samples bleiben erhalten
+			cache.write(key1, new long[] { ca }, new int[] { 0 }, createStore(1, 5));
+			if(!checkSection(cache, key1, sums, indices, new int[] { 5, 1, 2 })
+					|| file.length() != length)
+				System.out.println("Error in DVV-Test 08 merge");
+
+			// Eine geaenderte Datei wird nicht gefunden
+			writeFile(b, 3);
+			long changed = FeatureCache.checksum(b.getPath());
+			FeatureCache.Section section = cache.find(key1);
+			if(changed == cb || section.find(changed, 0) >= 0)
+				System.out.println("Error in DVV-Test 08 changed file");
+			section.close();
+
+			// Ein abgeschnittener Abschnitt wird verworfen
+			cache.write(key2, sums, indices, createStore(3, 7));
+			long complete = file.length();
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+			out.setLength(complete - 3);
+			out.close();
+			if(cache.find(key2) != null
+					|| !checkSection(cache, key1, sums, indices, new int[] { 5, 1, 2 }))
+				System.out.println("Error in DVV-Test 08 truncated tail");
+			cache.write(key2, sums, indices, createStore(3, 7));
+			if(file.length() != complete
+					|| !checkSection(cache, key2, sums, indices, new int[] { 7, 8, 9 })
+					|| !checkSection(cache, key1, sums, indices, new int[] { 5, 1, 2 }))
+				System.out.println("Error in DVV-Test 08 rewrite");
+		} catch (IOException e) {
+			System.out.println("Error in DVV-Test 08: " + e);
+		} finally {
+			for (File f : new File[] { a, b, file })
+				if (f != null)
+					f.delete();
+		}
+	}
+
+	private static void writeFile(File file, int content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		for(int i=0; i<100; i++)
+			out.write(content * i);
+		out.close();
+	}
+
+	/** Creates a store whose sample i holds first + i in every value. */
+	private static FeatureStore createStore(int count, int first) {
+		FeatureStore store = new FeatureStore(4, count, false);
+		for(int i=0; i<count; i++)
+			store.set(i, new double[] { first + i, first + i, first + i, first + i });
+		return store;
+	}
+
+	/** Checks that every sample is found with the expected values. */
+	private static boolean checkSection(FeatureCache cache, String key,
+			long[] sums, int[] indices, int[] expected) throws IOException {
+		FeatureCache.Section section = cache.find(key);
+		if(section == null)
+			return false;
+		try {
+			double[] values = new double[section.getDimension()];
+			for(int i=0; i<sums.length; i++) {
+				int position = section.find(sums[i], indices[i]);
+				if(position < 0)
+					return false;
+				section.get(position, values);
+				for(double value : values)
+					if(value != expected[i])
+						return false;
+			}
+			return true;
+		} finally {
+			section.close();
+		}
+	}
+
 	public static void test06() {
 		DVV dvv = null;
 		try {
@@ -154,4 +300,29 @@ class TestDVV {
 					System.out.println("Error in test06");
 	}
 
+	/** Switches back to a kept variant after shuffling the data. */
+	public static void test09() {
+		// Linear keeps the samples apart, tanh saturates on most pixels
+		Linear linear = new Linear();
+		try {
+			DVV dvv = new DVV("images", "labels");
+			dvv.setFeatureCacheEnabled(false);
+			dvv.preprocess(7, 0.3, linear);
+			Map<Data, double[]> expected = new IdentityHashMap<Data, double[]>();
+			for(Data d : dvv.getDataSet())
+				expected.put(d, d.getData().clone());
+			dvv.chooseRandomTrainingData(0.5, 0.2);
+			dvv.preprocess(10, 0.3, linear);
+			dvv.preprocess(7, 0.3, linear);
+			int wrong = 0;
+			for(Data d : dvv.getDataSet())
+				if(!Arrays.equals(d.getData(), expected.get(d)))
+					wrong++;
+			if(wrong > 0)
+				System.out.println("Error in DVV-Test 09: " + wrong + " samples");
+		} catch(Exception e) {
+			System.out.println("Error in DVV-Test 09: " + e);
+		}
+	}
+
 }
@@ -287,11 +287,30 @@ public class GUI implements GUIInterface {
 	}
 
 	@Override
-	public void setDataSet(Collection<Data> dataset) {
+	public void setDataSet(final Collection<Data> dataset) {
+		// Der Datensatz kann auch von einem SwingWorker kommen
+		if (!EventQueue.isDispatchThread()) {
+			EventQueue.invokeLater(new Runnable() {
+				public void run() {
+					setDataSet(dataset);
+				}
+			});
+			return;
+		}
 		for (Data d : dataset)
 			treeModel.add(d);
 	}
 
+	@Override
+	public void setImportProgress(int done, int total) {
+		ImportAudioAction.setProgress(done, total);
+	}
+
+	@Override
+	public void setPreprocessingProgress(int done, int total) {
+		MenuSubsamplingAction.setProgress(done, total);
+	}
+
 	@Override
 	public void setTestError(List<Double> errorData) {
 		MenuTrainAction.setTestError(errorData);
@@ -1,13 +1,16 @@
 package yaprnn.gui;
 
+import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.util.Collection;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 
 import yaprnn.dvv.InvalidFileException;
 import yaprnn.dvv.NoSuchFileException;
@@ -32,24 +35,86 @@ class ImportAudioAction implements ActionListener {
 			for (File f : chooser.getSelectedFiles())
 				filenames.add(f.getPath());
 			
+			if (monitor != null) {
+				// Es kann nur ein Import gleichzeitig laufen
+				JOptionPane.showMessageDialog(gui.getView(),
+						"An import is already in progress.", "Import audio",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+
 			// Vorher versuchen etwas Speicher frei zu machen
 			GUI.tryFreeMemory();
 			
+			ProgressDialog dialog = new ProgressDialog(gui.getView(),
+					"Import audio", "Importing the audio files...", filenames
+							.size());
+			monitor = dialog;
+			new ImportWorker(filenames).execute();
+			// Blockiert, bis der Worker den Dialog schliesst
+			dialog.setVisible(true);
+		}
+	}
+
+	/**
+	 * This worker invokes the import to not block the awt dispatcher thread.
+	 */
+	private class ImportWorker extends SwingWorker<Object, Object> {
+
+		private Collection<String> filenames;
+
+		ImportWorker(Collection<String> filenames) {
+			this.filenames = filenames;
+		}
+
+		@Override
+		protected Object doInBackground() throws InvalidFileException,
+				NoSuchFileException {
+			gui.getCore().openAiffSound(filenames);
+			return null;
+		}
+
+		@Override
+		protected void done() {
+			monitor.dispose();
+			monitor = null;
 			try {
-				gui.getCore().openAiffSound(filenames);
+				get();
 				JOptionPane.showMessageDialog(gui.getView(), "Finished.",
 						"Import audio", JOptionPane.INFORMATION_MESSAGE);
-			} catch (InvalidFileException ex) {
-				JOptionPane.showMessageDialog(gui.getView(), "Import failed!\n"
-						+ "Unsupported audio file format in" + "\n" + ex.getFilename(), //ex.getStackTrace(),
-						"An error occured", JOptionPane.ERROR_MESSAGE);
-			}
-			  catch (NoSuchFileException ex) {
-				JOptionPane.showMessageDialog(gui.getView(), "Import failed!\n"
-						+ "This file has not been found" + "\n" + ex.getFilename(), //ex.getStackTrace(),
-						"An error occured", JOptionPane.ERROR_MESSAGE);
+			} catch (ExecutionException e) {
+				Throwable ex = e.getCause();
+				if (ex instanceof InvalidFileException)
+					JOptionPane.showMessageDialog(gui.getView(), "Import failed!\n"
+							+ "Unsupported audio file format in" + "\n" + ((InvalidFileException) ex).getFilename(), //ex.getStackTrace(),
+							"An error occured", JOptionPane.ERROR_MESSAGE);
+				else if (ex instanceof NoSuchFileException)
+					JOptionPane.showMessageDialog(gui.getView(), "Import failed!\n"
+							+ "This file has not been found" + "\n" + ((NoSuchFileException) ex).getFilename(), //ex.getStackTrace(),
+							"An error occured", JOptionPane.ERROR_MESSAGE);
+				else
+					JOptionPane.showMessageDialog(gui.getView(), "Import failed!\n"
+							+ ex, "An error occured", JOptionPane.ERROR_MESSAGE);
+			} catch (InterruptedException e) {
 			}
 		}
+
+	}
+
+	// Zeigt den Fortschritt des laufenden Imports an
+	private static ProgressDialog monitor = null;
+
+	/**
+	 * Updates the progress of the running import. May be called by any
+	 * thread.
+	 */
+	static void setProgress(final int done, final int total) {
+		EventQueue.invokeLater(new Runnable() {
+			public void run() {
+				if (monitor != null)
+					monitor.setProgress(done, total);
+			}
+		});
 	}
 
 }
@@ -1,12 +1,15 @@
 package yaprnn.gui;
 
+import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.ImageIcon;
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -124,27 +127,79 @@ class MenuSubsamplingAction implements ActionListener {
 			si.sv.setVisible(false);
 			si.sv.dispose();
 
+			if (monitor != null) {
+				// Es kann nur eine Vorverarbeitung gleichzeitig laufen
+				JOptionPane.showMessageDialog(gui.getView(),
+						"A subsampling is already in progress.", "Subsampling",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+
 			// Vorher versuchen etwas Speicher frei zu machen
 			GUI.tryFreeMemory();
+			ProgressDialog dialog = new ProgressDialog(gui.getView(),
+					"Subsampling", "Subsampling the data set...", 1);
+			monitor = dialog;
+			new ProcessWorker(si.resolution, si.overlap,
+					(ActivationFunction) si.sv.getOptionScaleFun()
+							.getSelectedItem()).execute();
+			// Blockiert, bis der Worker den Dialog schliesst
+			dialog.setVisible(true);
+		}
+
+	}
+
+	/**
+	 * This worker invokes the preprocessing to not block the awt dispatcher
+	 * thread.
+	 */
+	private class ProcessWorker extends SwingWorker<Object, Object> {
+
+		private int resolution;
+		private double overlap;
+		private ActivationFunction scalingFunction;
+
+		ProcessWorker(int resolution, double overlap,
+				ActivationFunction scalingFunction) {
+			this.resolution = resolution;
+			this.overlap = overlap;
+			this.scalingFunction = scalingFunction;
+		}
+
+		@Override
+		protected Object doInBackground() throws NoSuchFileException {
+			gui.getCore().preprocess(resolution, overlap, scalingFunction);
+			return null;
+		}
+
+		@Override
+		protected void done() {
+			monitor.dispose();
+			monitor = null;
 			try {
-				si.gui.getCore().preprocess(
-						si.resolution,
-						si.overlap,
-						(ActivationFunction) si.sv.getOptionScaleFun()
-								.getSelectedItem());
+				get();
 				JOptionPane.showMessageDialog(gui.getView(), "Finished.",
 						"Subsampling", JOptionPane.INFORMATION_MESSAGE);
-			} catch (NoSuchFileException ex) {
-				JOptionPane.showMessageDialog(gui.getView(),
-						"Subsampling failed!\n"
-								+ "Resolution too large for image_"
-								+ ex.getFilename(), "An error occured",
-						JOptionPane.ERROR_MESSAGE);
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof NoSuchFileException)
+					JOptionPane.showMessageDialog(gui.getView(),
+							"Subsampling failed!\n"
+									+ "Resolution too large for image_"
+									+ ((NoSuchFileException) ex.getCause())
+											.getFilename(), "An error occured",
+							JOptionPane.ERROR_MESSAGE);
+				else
+					JOptionPane.showMessageDialog(gui.getView(),
+							"Subsampling failed!\n" + ex.getCause(),
+							"An error occured", JOptionPane.ERROR_MESSAGE);
+			} catch (InterruptedException ex) {
 			}
 		}
 
 	}
 
+	// Zeigt den Fortschritt der laufenden Vorverarbeitung an
+	private static ProgressDialog monitor = null;
 	private GUI gui;
 
 	MenuSubsamplingAction(GUI gui) {
@@ -153,6 +208,19 @@ class MenuSubsamplingAction implements ActionListener {
 		gui.getView().getMenuSubsampling().addActionListener(this);
 	}
 
+	/**
+	 * Updates the progress of the running preprocessing. May be called by any
+	 * thread.
+	 */
+	static void setProgress(final int done, final int total) {
+		EventQueue.invokeLater(new Runnable() {
+			public void run() {
+				if (monitor != null)
+					monitor.setProgress(done, total);
+			}
+		});
+	}
+
 	void setEnabled(boolean enabled) {
 		gui.getView().getMenuSubsampling().setEnabled(enabled);
 	}
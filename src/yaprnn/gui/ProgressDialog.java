@@ -0,0 +1,51 @@
+package yaprnn.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Frame;
+
+import javax.swing.BorderFactory;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+
+/**
+ * A modal dialog showing the progress of a long running operation. The
+ * operation can not be cancelled, so the dialog can only be closed by the
+ * worker running it.
+ */
+class ProgressDialog extends JDialog {
+
+	private static final long serialVersionUID = -3920163775409165251L;
+
+	private final JProgressBar progressBar = new JProgressBar();
+
+	ProgressDialog(Frame owner, String title, String message, int total) {
+		super(owner, title, true);
+		setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+
+		progressBar.setMaximum(total);
+		progressBar.setStringPainted(true);
+		progressBar.setPreferredSize(new Dimension(300, progressBar
+				.getPreferredSize().height));
+
+		JPanel panel = new JPanel(new BorderLayout(0, 8));
+		panel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+		panel.add(new JLabel(message), BorderLayout.NORTH);
+		panel.add(progressBar, BorderLayout.CENTER);
+		setContentPane(panel);
+		setResizable(false);
+		pack();
+		setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Updates the progress, to be called by the awt dispatcher thread.
+	 */
+	void setProgress(int done, int total) {
+		progressBar.setMaximum(total);
+		progressBar.setValue(done);
+	}
+
+}
@@ -21,4 +21,40 @@ public interface ActivationFunction extends Serializable{
 	 */
 	public double derivation(double x);
 
+	/**
+	 * The derivative of  the activation function, computed from the value of the activation function. This saves
+	 * computing the activation function again during the backpropagation.
+	 * @param y  The value of the activation function at x, see {@link #compute(double)}
+	 * @return Value of the derivative of  the activation function at x
+	 */
+	public double derivationFromOutput(double y);
+
+	/**
+	 * The regular activation function for a range of values. x and y may be the same array.
+	 * @param x  The parameters of the activation function.
+	 * @param y  Receives the values of the activation function, y[i] = compute(x[i]).
+	 * @param from  The first index.
+	 * @param to  The index after the last one.
+	 */
+	public void compute(double[] x, double[] y, int from, int to);
+
+	/**
+	 * The derivative of  the activation function for a range of values. x and result may be the same array.
+	 * @param x  The parameters of the derivative.
+	 * @param result  Receives the values of the derivative, result[i] = derivation(x[i]).
+	 * @param from  The first index.
+	 * @param to  The index after the last one.
+	 */
+	public void derivation(double[] x, double[] result, int from, int to);
+
+	/**
+	 * The derivative of  the activation function for a range of values of the activation function. y and result may
+	 * be the same array.
+	 * @param y  The values of the activation function.
+	 * @param result  Receives the values of the derivative, result[i] = derivationFromOutput(y[i]).
+	 * @param from  The first index.
+	 * @param to  The index after the last one.
+	 */
+	public void derivationFromOutput(double[] y, double[] result, int from, int to);
+
 }
@@ -0,0 +1,240 @@
+package yaprnn.mlp;
+
+import java.io.Serializable;
+
+import yaprnn.dvv.Data;
+
+/**
+ * This object represents a layer of a {@link FloatMLP}. It works like {@link Layer}, but stores the weights, the
+ * weight modifications and the outputs in single precision, which halves the memory needed for the matrices.
+ */
+class FloatLayer implements Serializable {
+	private static final long serialVersionUID = 2951850183525371461L;
+
+	private final FloatLayer prevLayer;
+
+	// The matrices are stored row-major like in Layer
+	final float[] weights;
+	final float[] gradients;
+	final float[] lastGradients;
+	final int columns;
+
+	private final ActivationFunction function;
+
+	final float[] output;
+	final float[] layerInput;
+	private final float bias;
+
+	// Receives the data of a sample at the input layer before it is rounded
+	private transient double[] dataBuffer;
+
+	/**
+	 * Constructor; Is initialized with the previous layer, activation function, number of neurons and the bias.
+	 * @param prevLayer The previous layer; Null if this layer is the first one.
+	 * @param neurons Number of neurons.
+	 * @param function Activation function of this layer
+	 * @param bias The bias
+	 * @throws BadConfigException Is thrown in case of incorrect configuration
+	 */
+	FloatLayer(FloatLayer prevLayer, int neurons, ActivationFunction function, double bias) throws BadConfigException {
+		neurons++;
+
+		// Tests  configuration
+		if (neurons <= 0)
+			throw new BadConfigException("Ungueltige Anzahl fuer Neuronen: "
+					+ neurons, BadConfigException.INVALID_NEURON_NUMBER);
+		if (function == null)
+			throw new BadConfigException("Keine ActivationFunction Uebergeben!",
+					BadConfigException.INVALID_ACTIVATION_FUNCTION);
+
+		this.prevLayer = prevLayer;
+		this.function = function;
+		this.bias = (float) bias;
+		this.output = new float[neurons];
+		this.layerInput = new float[neurons];
+
+		if (prevLayer == null) {
+			columns = 0;
+			weights = gradients = lastGradients = null;
+			return;
+		}
+
+		columns = prevLayer.getSize();
+		weights = new float[neurons * columns];
+		gradients = new float[neurons * columns];
+		lastGradients = new float[neurons * columns];
+
+		for (int k = 0; k < weights.length; k++)
+			weights[k] = (float) (0.5 - Math.random());
+	}
+
+	/**
+	 * Constructor; Copies the weights of a double precision layer and rounds them to single precision.
+	 * @param prevLayer The previous layer; Null if this layer is the first one.
+	 * @param layer The layer to copy.
+	 */
+	FloatLayer(FloatLayer prevLayer, Layer layer) {
+		this.prevLayer = prevLayer;
+		this.function = layer.getActivationFunction();
+		this.bias = (float) layer.getBias();
+		this.output = new float[layer.getSize()];
+		this.layerInput = new float[layer.getSize()];
+
+		if (prevLayer == null) {
+			columns = 0;
+			weights = gradients = lastGradients = null;
+			return;
+		}
+
+		columns = layer.columns;
+		weights = new float[layer.weights.length];
+		gradients = new float[layer.weights.length];
+		lastGradients = new float[layer.weights.length];
+		for (int k = 0; k < weights.length; k++)
+			weights[k] = (float) layer.weights[k];
+	}
+
+	/**
+	 * Sets the input data, to be used at the input layer.
+	 * @param input The input vector, that needs the same dimension as the layer.
+	 * @return false if the dimension does not fit.
+	 */
+	boolean setInput(double[] input) {
+		if (output.length - 1 != input.length)
+			return false;
+
+		for (int i = 0; i < input.length; i++)
+			output[i] = (float) input[i];
+		output[output.length - 1] = 0;
+		return true;
+	}
+
+	/**
+	 * Sets the preprocessed data of a sample as input without allocating, to be used at the input layer.
+	 * @param data The sample, whose data needs the same dimension as the layer.
+	 * @return false if the dimension does not fit.
+	 */
+	boolean setInput(Data data) {
+		if (output.length - 1 != data.getDataLength())
+			return false;
+
+		if (dataBuffer == null)
+			dataBuffer = new double[output.length - 1];
+		data.copyData(dataBuffer, 0);
+		return setInput(dataBuffer);
+	}
+
+	/**
+	 * Calculates the output vector of this layer from the current output of the previous layer.
+	 * @return The output vector of this layer.
+	 */
+	float[] forward() {
+		float[] input = prevLayer.output;
+
+		for (int h = 0, row = 0; h < output.length - 1; h++, row += columns) {
+			float sum = 0;
+			for (int i = 0; i < columns; i++)
+				sum += input[i] * weights[row + i];
+
+			layerInput[h] = sum;
+			output[h] = (float) function.compute(sum);
+		}
+
+		output[output.length - 1] = bias;
+
+		return output;
+	}
+
+	/**
+	 * Saves the weight modifications caused by the given error and calculates the error of the previous layer.
+	 * @param error The error of this layer.
+	 * @param preLayerError Receives the error of the previous layer. If null, it is not calculated.
+	 */
+	void backPropagate(float[] error, float[] preLayerError) {
+		float[] prevOutput = prevLayer.output;
+
+		// alter gradient
+		for (int i = 0, row = 0; i < output.length; i++, row += columns)
+			for (int h = 0; h < columns; h++)
+				gradients[row + h] += error[i] * prevOutput[h];
+
+		// generate preLayerError
+		if (preLayerError != null)
+			for (int i = 0; i < columns; i++) {
+				float sum = 0;
+				for (int h = 0, k = i; h < error.length; h++, k += columns)
+					sum += error[h] * weights[k];
+
+				preLayerError[i] = sum * (float) prevLayer.derivation(i);
+			}
+	}
+
+	/**
+	 * Adjusts the weights of this layer.
+	 * @param eta The learning rate to be used.
+	 */
+	void updateWeights(float eta) {
+		for (int k = 0; k < weights.length; k++) {
+			weights[k] -= eta * gradients[k];
+			gradients[k] = 0;
+		}
+	}
+
+	/**
+	 * Adjusts the weights of this layer and uses a momentum, see {@link Layer#update(double, double)}.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The proportion of the last weight adjustment.
+	 */
+	void updateWeights(float eta, float momentum) {
+		float negMomentum = 1 - momentum;
+
+		for (int k = 0; k < weights.length; k++) {
+			lastGradients[k] = eta * (negMomentum * gradients[k] + momentum * lastGradients[k]);
+			weights[k] -= lastGradients[k];
+			gradients[k] = 0;
+		}
+	}
+
+	/**
+	 * Returns the derivative of the activation function at neuron h from the cached output like
+	 * {@link Layer#derivations()}.
+	 * @param h The index of the neuron.
+	 * @return The derivative.
+	 */
+	double derivation(int h) {
+		if (h == output.length - 1)
+			return function.derivation(layerInput[h]);
+		return function.derivationFromOutput(output[h]);
+	}
+
+	/**
+	 * The number on neurons in the current layer.
+	 * @return Number of neurons
+	 */
+	int getSize() {
+		return output.length;
+	}
+
+	/**
+	 * Returns the {@link ActivationFunction activation function}.
+	 * @return The activation function, that is used in this layer.
+	 */
+	ActivationFunction getActivationFunction() {
+		return function;
+	}
+
+	/**
+	 * Returns a copy of the weight matrix in double precision.
+	 * @return the connecting weight matrix.
+	 */
+	double[][] getWeightMatrix() {
+		if (weights == null)
+			return null;
+
+		double[][] matrix = new double[output.length][columns];
+		for (int h = 0; h < matrix.length; h++)
+			for (int i = 0; i < columns; i++)
+				matrix[h][i] = weights[h * columns + i];
+		return matrix;
+	}
+}
@@ -0,0 +1,307 @@
+package yaprnn.mlp;
+
+import java.util.Collection;
+
+import yaprnn.dvv.Data;
+
+/**
+ * This class represents a MLP which computes in single precision. It is trained like {@link MLP}, but its
+ * {@link FloatLayer}s need only half of the memory for the weight, gradient and momentum matrices. Training and
+ * classification are always performed by the calling thread, the methods taking a number of threads ignore it.
+ * A FloatMLP can not be trained as autoencoder itself, instead a pre-trained {@link MLP} is converted with
+ * {@link #FloatMLP(MLP)}, as {@link MLPStub} does.
+ */
+public class FloatMLP implements MultiLayerPerceptron {
+
+	private static final long serialVersionUID = -3160471525383297705L;
+
+	private final FloatLayer[] layer;
+	int iterations = 0;
+
+	// Error buffers of the layers, errors[l] receives the error of layer l
+	private transient float[][] errors;
+
+	/**
+	 * Builds the Network and sets all necessary variables, see {@link MLP#MLP(int, int, int[], ActivationFunction[], double[])}.
+	 *
+	 * @param inputNeurons
+	 * @param outputNeurons
+	 * @param hiddenLayers array with hidden layers.
+	 * @param functions array with activation functions.
+	 * @param bias Array with biases.
+	 */
+	public FloatMLP(int inputNeurons, int outputNeurons, int[] hiddenLayers, ActivationFunction[] functions, double[] bias) throws BadConfigException {
+
+		// Tests the configuration
+		if (inputNeurons < 1)
+			throw new BadConfigException(
+					"Invalid number of neurons in the input layer!",
+					BadConfigException.INVALID_INPUT_LAYER_DIMENSION);
+		if (outputNeurons < 1)
+			throw new BadConfigException(
+					"Invalid number of neurons in the output layer!",
+					BadConfigException.INVALID_OUTPUT_LAYER_DIMENSION);
+		if (functions.length != hiddenLayers.length + 2)
+			throw new BadConfigException(
+					"The number of activiation functions is not equal to the number of layers!",
+					BadConfigException.INVALID_NUMBER_OF_FUNCTIONS);
+		if (bias.length != hiddenLayers.length)
+			throw new BadConfigException(
+					"The number of bias values is not equal to the number of layers!",
+					BadConfigException.INVALID_NUMBER_OF_BIAS);
+
+		// The layers are configured exactly like those of the MLP
+		layer = new FloatLayer[hiddenLayers.length + 2];
+		layer[0] = new FloatLayer(null, inputNeurons, functions[0], 0);
+
+		for (int i = 0; i < hiddenLayers.length; i++)
+			layer[i + 1] = new FloatLayer(layer[i], hiddenLayers[i], functions[i], bias[i]);
+
+		layer[layer.length - 1] = new FloatLayer(layer[layer.length - 2],
+				outputNeurons, functions[functions.length - 1], 0);
+	}
+
+	/**
+	 * Builds a copy of the given network with all weights rounded to single precision.
+	 * @param mlp The network to copy.
+	 */
+	public FloatMLP(MLP mlp) {
+		layer = new FloatLayer[mlp.getNumLayers()];
+		for (int l = 0; l < layer.length; l++)
+			layer[l] = new FloatLayer(l > 0 ? layer[l - 1] : null, mlp.getLayer(l));
+	}
+
+	/**
+	 * Autoencoding is not supported in single precision, see {@link #FloatMLP(MLP)}.
+	 * @return false
+	 */
+	public boolean makeAutoencoder(int maxIterations, double maxError, double eta) {
+		return false;
+	}
+
+	/**
+	 * This function performs the online calculation with the the network.
+	 *
+	 * @param dataCollection A collection of the type {@link Data} with input and target values.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 * @return The Training error computed by the function {@link #runTest(Collection)}.
+	 */
+	public double runOnline(Collection<Data> dataCollection, double eta, double momentum) {
+		float[] errVec = errors()[layer.length - 1];
+
+		for (Data theData : dataCollection) {
+			if (!layer[0].setInput(theData))
+				System.out.println("Can't set input data!");
+
+			outputError(forward(), theData.getTarget(), errVec);
+			backPropagate(errVec);
+			update(eta, momentum);
+		}
+
+		return runTest(dataCollection);
+	}
+
+	/**
+	 * Performs the online calculation like {@link #runOnline(Collection, double, double)}, the threads are ignored.
+	 */
+	public double runOnline(Collection<Data> dataCollection, double eta, double momentum, int threads) {
+		return runOnline(dataCollection, eta, momentum);
+	}
+
+	/**
+	 * This function performs the batch calculation with the network.
+	 *
+	 * @param dataCollection A collection of the type {@link Data} with input and target values.
+	 * @param batchSize The number of samples after which the weights are adjusted.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 * @return The Training error computed by the function {@link #runTest(Collection)}.
+	 */
+	public double runBatch(Collection<Data> dataCollection, int batchSize, double eta, double momentum) {
+		float[] errVec = errors()[layer.length - 1];
+
+		for (Data theData : dataCollection) {
+			if (!layer[0].setInput(theData))
+				System.out.println("Can't set input data!");
+
+			outputError(forward(), theData.getTarget(), errVec);
+			backPropagate(errVec);
+			iterations++;
+
+			if (iterations % batchSize == 0)
+				update(eta, momentum);
+		}
+
+		return runTest(dataCollection);
+	}
+
+	/**
+	 * Performs the batch calculation like {@link #runBatch(Collection, int, double, double)}, the threads are ignored.
+	 */
+	public double runBatch(Collection<Data> dataCollection, int batchSize, double eta, double momentum, int threads) {
+		return runBatch(dataCollection, batchSize, eta, momentum);
+	}
+
+	/**
+	 * This method performs a test using delivered data.
+	 *
+	 * @param dataCollection The data, tu be used for the test.
+	 * @return The test error. If an error occurse, returns 0.
+	 */
+	public double runTest(Collection<Data> dataCollection) {
+		float[] errVec = errors()[layer.length - 1];
+		double err = 0;
+
+		for (Data theData : dataCollection) {
+			if (!layer[0].setInput(theData))
+				return 0;
+
+			outputError(forward(), theData.getTarget(), errVec);
+			for (float v : errVec)
+				err += v * v;
+		}
+
+		return (0.5 * err) / dataCollection.size();
+	}
+
+	/**
+	 * This method is used to classify a given input vector.
+	 * @param input The input to classify with a dimension equal to the input neurons.
+	 * @return The output of neurons in percents.
+	 */
+	public double[] classify(double[] input) {
+		return classify(input, new double[layer[layer.length - 1].getSize()]);
+	}
+
+	/**
+	 * This method is used to classify a given input vector without allocating a new result.
+	 * @param input The input to classify with a dimension equal to the input neurons.
+	 * @param retVal Receives the output of neurons in percents.
+	 * @return retVal
+	 */
+	public double[] classify(double[] input, double[] retVal) {
+		layer[0].setInput(input);
+		float[] netOutput = forward();
+
+		for (int i = 0; i < retVal.length; i++)
+			retVal[i] = Math.exp(10 * netOutput[i]);
+		// Sum up
+		double sum = 0;
+		for (double v : retVal) sum += v;
+
+		for (int i = 0; i < retVal.length; i++)
+			retVal[i] = retVal[i] * 100 / sum;
+
+		return retVal;
+	}
+
+	/**
+	 * This method is used to classify many input vectors, the threads are ignored.
+	 * @param inputs The inputs to classify with a dimension equal to the input neurons.
+	 * @param threads Ignored.
+	 * @return The output of neurons in percents for every input.
+	 */
+	public double[][] classify(double[][] inputs, int threads) {
+		double[][] result = new double[inputs.length][layer[layer.length - 1].getSize()];
+		for (int i = 0; i < inputs.length; i++)
+			classify(inputs[i], result[i]);
+		return result;
+	}
+
+	/**
+	 * Returns a copy of the weight matrix of the given layer in double precision.
+	 * @param layer The layer's index.
+	 * @return The layer's weight matrix.
+	 */
+	public double[][] getWeights(int layer) {
+		if (layer > (this.layer.length - 1))
+			return null;
+
+		return this.layer[layer].getWeightMatrix();
+	}
+
+	/**
+	 * This function resets the integrated iteration-counter.
+	 */
+	public void resetIterations() {
+		iterations = 0;
+	}
+
+	/**
+	 * Returns the given {@link FloatLayer}.
+	 * @param layer Index of the requested layer.
+	 * @return The layer.
+	 */
+	FloatLayer getLayer(int layer) {
+		return this.layer[layer];
+	}
+
+	/**
+	 * Calculates the output of the network for the input set at the input layer.
+	 * @return The output vector of the output layer.
+	 */
+	private float[] forward() {
+		float[] out = null;
+		for (int l = 1; l < layer.length; l++)
+			out = layer[l].forward();
+		return out;
+	}
+
+	/**
+	 * Calculates the error of the output layer like {@link MLP#runOnline(Collection, double, double)}.
+	 * @param out The output of the output layer.
+	 * @param target The index where the target value is 1.
+	 * @param errVec Receives the error.
+	 */
+	private void outputError(float[] out, int target, float[] errVec) {
+		FloatLayer outLayer = layer[layer.length - 1];
+
+		for (int h = 0; h < errVec.length; h++)
+			if (h == target)
+				errVec[h] = (out[h] - 1) * (float) outLayer.derivation(h);
+			else
+				errVec[h] = out[h] * (float) outLayer.derivation(h);
+	}
+
+	/**
+	 * Propagates the error of the output layer back to the first hidden layer.
+	 * @param errVec The error of the output layer.
+	 */
+	private void backPropagate(float[] errVec) {
+		float[][] errors = errors();
+		float[] error = errVec;
+		for (int l = layer.length - 1; l > 0; l--) {
+			// The error of the input layer is never used
+			float[] preLayerError = l > 1 ? errors[l - 1] : null;
+			layer[l].backPropagate(error, preLayerError);
+			error = preLayerError;
+		}
+	}
+
+	/**
+	 * Adjusts the weights of all layers with the saved weight modifications.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 */
+	private void update(double eta, double momentum) {
+		for (int l = layer.length - 1; l > 0; l--)
+			if (momentum > 0)
+				layer[l].updateWeights((float) eta, (float) momentum);
+			else
+				layer[l].updateWeights((float) eta);
+	}
+
+	/**
+	 * Returns the error buffers of all layers. They are allocated once and reused for every sample.
+	 * @return The error buffers, the buffer of the input layer is null.
+	 */
+	private float[][] errors() {
+		if (errors == null) {
+			errors = new float[layer.length][];
+			for (int l = 1; l < layer.length; l++)
+				errors[l] = new float[layer[l].getSize()];
+		}
+		return errors;
+	}
+}
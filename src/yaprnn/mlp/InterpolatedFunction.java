@@ -0,0 +1,171 @@
+package yaprnn.mlp;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+/**
+ * This {@link ActivationFunction} approximates another activation function by linear interpolation in a table of
+ * precomputed values, which is cheaper than computing Math.exp or Math.tanh for every neuron. The table covers the
+ * range [min, max] with the given number of intervals, outside of this range the function itself is computed. The
+ * table is not serialized but rebuilt after reading.
+ */
+public class InterpolatedFunction implements ActivationFunction {
+
+	private static final long serialVersionUID = 3385217608917441409L;
+
+	private final ActivationFunction function;
+	private final double min;
+	private final double max;
+	private final int resolution;
+
+	private transient double[] table;
+	private transient double scale;
+
+	/**
+	 * Constructor; Builds the table of the given function.
+	 * @param function The function to approximate.
+	 * @param min The lower bound of the table.
+	 * @param max The upper bound of the table.
+	 * @param resolution The number of intervals between min and max.
+	 */
+	public InterpolatedFunction(ActivationFunction function, double min, double max, int resolution) {
+		if (function == null)
+			throw new IllegalArgumentException("No function given!");
+		if (!(min < max))
+			throw new IllegalArgumentException("Invalid range: [" + min + ", " + max + "]");
+		if (resolution < 1)
+			throw new IllegalArgumentException("Invalid resolution: " + resolution);
+
+		this.function = function;
+		this.min = min;
+		this.max = max;
+		this.resolution = resolution;
+		buildTable();
+	}
+
+	/**
+	 * Computes the interpolated value of the function to the parameter x.
+	 * @return the function's value with x
+	 */
+	public double compute(double x) {
+		if (!(x >= min && x < max))
+			return function.compute(x);
+
+		double pos = (x - min) * scale;
+		// Rounding may yield the last table index for x just below max
+		int i = Math.min((int) pos, resolution - 1);
+		double frac = pos - i;
+		return table[i] + frac * (table[i + 1] - table[i]);
+	}
+
+	/**
+	 * Computes the function's derivation to the parameter x from the interpolated value.
+	 * @return the function's derivation with value x.
+	 */
+	public double derivation(double x) {
+		return function.derivationFromOutput(compute(x));
+	}
+
+	/**
+	 * Computes the function's derivation from the function's value y.
+	 * @return the function's derivation.
+	 */
+	public double derivationFromOutput(double y) {
+		return function.derivationFromOutput(y);
+	}
+
+	/**
+	 * Computes the interpolated values for a range of parameters, see
+	 * {@link ActivationFunction#compute(double[], double[], int, int)}.
+	 */
+	public void compute(double[] x, double[] y, int from, int to) {
+		for (int i = from; i < to; i++)
+			y[i] = compute(x[i]);
+	}
+
+	/**
+	 * Computes the function's derivation for a range of parameters from the interpolated values, see
+	 * {@link ActivationFunction#derivation(double[], double[], int, int)}.
+	 */
+	public void derivation(double[] x, double[] result, int from, int to) {
+		compute(x, result, from, to);
+		function.derivationFromOutput(result, result, from, to);
+	}
+
+	/**
+	 * Computes the function's derivation for a range of function values, see
+	 * {@link ActivationFunction#derivationFromOutput(double[], double[], int, int)}.
+	 */
+	public void derivationFromOutput(double[] y, double[] result, int from, int to) {
+		function.derivationFromOutput(y, result, from, to);
+	}
+
+	/**
+	 * Estimates the maximum error of the interpolation inside the table's range. The error of a linear
+	 * interpolation is largest near the middle of an interval, so the middle of every interval is compared with
+	 * the function itself.
+	 * @return The largest absolute difference found.
+	 */
+	public double getMaxError() {
+		double step = (max - min) / resolution;
+		double error = 0;
+		for (int i = 0; i < resolution; i++) {
+			double x = min + (i + 0.5) * step;
+			error = Math.max(error, Math.abs(compute(x) - function.compute(x)));
+		}
+		return error;
+	}
+
+	/**
+	 * Returns the function which is approximated.
+	 * @return The function.
+	 */
+	public ActivationFunction getFunction() {
+		return function;
+	}
+
+	/**
+	 * Returns the lower bound of the table.
+	 * @return min
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the upper bound of the table.
+	 * @return max
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the number of intervals of the table.
+	 * @return The resolution.
+	 */
+	public int getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * The function's string presentation.
+	 * @return the name
+	 */
+	public String toString() {
+		return function + " (interpolated)";
+	}
+
+	private void buildTable() {
+		double step = (max - min) / resolution;
+		table = new double[resolution + 1];
+		for (int i = 0; i <= resolution; i++)
+			table[i] = function.compute(min + i * step);
+		scale = resolution / (max - min);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		buildTable();
+	}
+}
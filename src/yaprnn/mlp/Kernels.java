@@ -0,0 +1,87 @@
+package yaprnn.mlp;
+
+/**
+ * This object contains the inner loops of the forward pass, the backpropagation and the weight adjustment, which are
+ * used by {@link Layer} and {@link MiniBatch}. The default implementation is plain Java code. If the classes of
+ * src-simd have been compiled and the JVM has been started with "--add-modules jdk.incubator.vector", the loops are
+ * computed with the SIMD instructions of the processor instead; the sums are then built in a different order, so the
+ * results differ by rounding.
+ */
+class Kernels {
+
+	/** The implementation which is used. */
+	static final Kernels INSTANCE = create();
+
+	/**
+	 * Computes the dot product of two vectors.
+	 * @param a The first vector.
+	 * @param aOffset Index of the first element of a.
+	 * @param b The second vector.
+	 * @param bOffset Index of the first element of b.
+	 * @param length Number of elements.
+	 * @return The sum of a[aOffset + i] * b[bOffset + i].
+	 */
+	double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+		double sum = 0;
+		for (int i = 0; i < length; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+	/**
+	 * Adds a multiple of one vector to another one.
+	 * @param alpha The factor.
+	 * @param x The vector to add.
+	 * @param xOffset Index of the first element of x.
+	 * @param y The vector which receives the sum.
+	 * @param yOffset Index of the first element of y.
+	 * @param length Number of elements.
+	 */
+	void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+		for (int i = 0; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	/**
+	 * Adjusts weights with the given weight modifications, see {@link Layer#update(double)}.
+	 * @param weights The weights.
+	 * @param gradient The weight modifications, they are reset to 0.
+	 * @param eta The learning rate to be used.
+	 */
+	void update(double[] weights, double[] gradient, double eta) {
+		for (int k = 0; k < weights.length; k++) {
+			weights[k] -= eta * gradient[k];
+			gradient[k] = 0;
+		}
+	}
+
+	/**
+	 * Adjusts weights with the given weight modifications and a momentum, see {@link Layer#update(double, double)}.
+	 * @param weights The weights.
+	 * @param gradient The weight modifications, they are reset to 0.
+	 * @param lastGradient The last adjustment of every weight.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The proportion of the last adjustment.
+	 */
+	void update(double[] weights, double[] gradient, double[] lastGradient, double eta, double momentum) {
+		double negMomentum = 1 - momentum;
+
+		for (int k = 0; k < weights.length; k++) {
+			lastGradient[k] = eta * (negMomentum * gradient[k] + momentum * lastGradient[k]);
+			weights[k] -= lastGradient[k];
+			gradient[k] = 0;
+		}
+	}
+
+	/**
+	 * Returns the SIMD implementation if it is available, otherwise this implementation.
+	 */
+	private static Kernels create() {
+		try {
+			return (Kernels) Class.forName("yaprnn.mlp.VectorKernels").getDeclaredConstructor().newInstance();
+		} catch (Throwable e) {
+			// Not compiled or jdk.incubator.vector not loaded
+			return new Kernels();
+		}
+	}
+}
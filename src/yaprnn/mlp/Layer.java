@@ -1,8 +1,12 @@
 package yaprnn.mlp;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 
+import yaprnn.dvv.Data;
+
 /**
  * This object represents a layer of the neural network. 
  *
@@ -12,9 +16,15 @@ public class Layer implements Serializable {
 
 	private Layer prevLayer;
 
-	private double[][] weightMatrix;
-	private double[][] gradientMatrix;
-	private double[][] lastGradientMatrix;
+	/*
+	 * The matrices are stored row-major in one array each. Row h holds the
+	 * weights from all neurons of the previous layer to neuron h and starts at
+	 * h * columns.
+	 */
+	double[] weights;
+	double[] gradients;
+	double[] lastGradients;
+	int columns;
 
 	private ActivationFunction function;
 
@@ -22,6 +32,8 @@ public class Layer implements Serializable {
 	double[] input = null;
 	private double bias;
 	double[] layerInput;
+	// Derivatives of the activation function for the current output, see derivations()
+	private transient double[] derivations;
 
 	/**
 	 * Constructor; Is  initialized with the previuos layer, activation function  number of neurons and the bias
@@ -52,14 +64,14 @@ public class Layer implements Serializable {
 		if (prevLayer == null) return;
 
 		this.prevLayer = prevLayer;
-		this.weightMatrix = new double[neurons][prevLayer.getSize()];
-		this.gradientMatrix = new double[neurons][prevLayer.getSize()];
-		this.lastGradientMatrix = new double[neurons][prevLayer.getSize()];
+		this.columns = prevLayer.getSize();
+		this.weights = new double[neurons * columns];
+		this.gradients = new double[neurons * columns];
+		this.lastGradients = new double[neurons * columns];
 		
 		// Setting values of matrices and arrays
-		for (int h = 0; h < neurons; h++)
-			for (int i = 0; i < prevLayer.getSize(); i++)
-				weightMatrix[h][i] = 0.5 - Math.random();
+		for (int k = 0; k < weights.length; k++)
+			weights[k] = 0.5 - Math.random();
 	}
 
 	/**
@@ -73,7 +85,23 @@ public class Layer implements Serializable {
 	
 		this.input = input;
 
-		output = Arrays.copyOf(input, output.length);
+		System.arraycopy(input, 0, output, 0, input.length);
+		output[output.length - 1] = 0;
+		return true;
+	}
+
+	/**
+	 *  This function is to be used at the input layer and copies the preprocessed data of a sample without allocating.
+	 * @param data The sample, whose data needs the same dimension as the layer.
+	 * @return false if the dimension does not match.
+	 */
+	boolean setInput(Data data) {
+		if (output.length - 1 != data.getDataLength())
+			return false;
+
+		this.input = null;
+
+		data.copyData(output, 0);
 		output[output.length - 1] = 0;
 		return true;
 	}
@@ -85,27 +113,28 @@ public class Layer implements Serializable {
 	 */
 	public double[] getOutput() {
 		// Recursion cancel
-		if (prevLayer == null){
-			layerInput = output;
+		if (prevLayer == null)
 			return output;
-		}
 
-		input  = prevLayer.getOutput();
+		prevLayer.getOutput();
+		return forward();
+	}
 
-		
-		// Generate the output
-		for (int h = 0; h < output.length - 1; h++) {
-			// Reset
-			output[h] = 0;
+	/**
+	 * Calculates the output vector of this layer from the current output of the previous layer without descending
+	 * any further. The previous layer has to be calculated already.
+	 * @return The output vector of this layer.
+	 */
+	double[] forward() {
+		input = prevLayer.output;
 
+		// Generate the output
+		for (int h = 0, row = 0; h < output.length - 1; h++, row += columns)
 			//  Multiply every output of the last Layer with the corresponding  matrix  and add it.
-			for (int i = 0; i < input.length; i++)
-				output[h] += input[i] * weightMatrix[h][i];
-			
-			layerInput[h] = output[h];
-			// Use the activation function on the sum.
-			output[h] = function.compute(output[h]);
-		}
+			layerInput[h] = Kernels.INSTANCE.dot(input, 0, weights, row, columns);
+
+		// Use the activation function on the sums.
+		function.compute(layerInput, output, 0, output.length - 1);
 		
 		output[output.length - 1] = bias;
 		
@@ -129,28 +158,49 @@ public class Layer implements Serializable {
 	public double backPropagate(double[] error) {
 		if(prevLayer == null) return 0;
 
-		double retVal = 0;
 		// init
 		double[] preLayerError = new double[prevLayer.getSize()];
 
+		double retVal = backPropagate(error, preLayerError);
+		return retVal += prevLayer.backPropagate(preLayerError);
+	}
+
+	/**
+	 * Saves the weight modifications caused by the given error and calculates the error of the previous layer,
+	 * without passing it on.
+	 * @param error The error of this layer.
+	 * @param preLayerError Receives the error of the previous layer. If null, the error of the previous layer is not
+	 * calculated.
+	 * @return The mean gradient of this layer.
+	 */
+	double backPropagate(double[] error, double[] preLayerError) {
+		Kernels kernels = Kernels.INSTANCE;
+		double retVal = 0;
+		double[] prevOutput = prevLayer.output;
+		int rows = output.length;
+
+		double prevSum = 0;
+		for (int h = 0; h < columns; h++)
+			prevSum += prevOutput[h];
+
 		// alter gradient
-		for (int i = 0; i < gradientMatrix.length; i++) 
-			for (int h = 0; h < prevLayer.output.length; h++){
-				gradientMatrix[i][h] += error[i] * prevLayer.output[h];
-				retVal += error[i] * prevLayer.output[h];
-			}
-		
+		for (int i = 0, row = 0; i < rows; i++, row += columns) {
+			kernels.axpy(error[i], prevOutput, 0, gradients, row, columns);
+			retVal += error[i] * prevSum;
+		}
 		
-		// generate preLayerError
-		for (int i = 0; i < prevLayer.getSize(); i++) {
-			for (int h = 0; h < error.length; h++)
-				preLayerError[i] += error[h] * weightMatrix[h][i];
-
-			preLayerError[i] *= prevLayer.function.derivation(prevLayer.layerInput[i]);
+		// generate preLayerError, the rows of the weights are added up in the same order as the sums of a column
+		if (preLayerError != null) {
+			Arrays.fill(preLayerError, 0, columns, 0);
+			for (int h = 0, row = 0; h < error.length; h++, row += columns)
+				kernels.axpy(error[h], weights, row, preLayerError, 0, columns);
+
+			double[] derivations = prevLayer.derivations();
+			for (int i = 0; i < columns; i++)
+				preLayerError[i] *= derivations[i];
 		}
 
-		retVal /= gradientMatrix.length;
-		return retVal += prevLayer.backPropagate(preLayerError);
+		return retVal / rows;
 	}
 
 	/**
@@ -160,15 +210,27 @@ public class Layer implements Serializable {
 	public void update(double eta) {
 		if(prevLayer == null) return;
 		
-		for(int i = 0; i < output.length; i++)
-			for(int h = 0; h < prevLayer.getSize(); h++){
-				weightMatrix[i][h] -= eta * gradientMatrix[i][h];
-				gradientMatrix[i][h] = 0;
-			}
-		
+		updateWeights(eta);
 		prevLayer.update(eta);
 	}
 
+	/**
+	 * Adjusts the weights of this layer only.
+	 * @param eta The learning rate to be used.
+	 */
+	void updateWeights(double eta) {
+		updateWeights(gradients, eta);
+	}
+
+	/**
+	 * Adjusts the weights of this layer only with the given weight modifications.
+	 * @param gradient The weight modifications, they are reset to 0.
+	 * @param eta The learning rate to be used.
+	 */
+	void updateWeights(double[] gradient, double eta) {
+		Kernels.INSTANCE.update(weights, gradient, eta);
+	}
+
 	/**
 	 * Adjusts recursively the weights of the net and uses a momentum to avoide oscillations. 
 	 * @param eta  The learning rate to be used.
@@ -178,18 +240,46 @@ public class Layer implements Serializable {
 	 */
 	public void update(double eta, double momentum) {
 		if(prevLayer == null) return;
-		double negMomentum = 1 - momentum;
-		
-		for(int i = 0; i < output.length; i++)
-			for(int h = 0; h < prevLayer.getSize(); h++){
-				lastGradientMatrix[i][h] = eta * (negMomentum *  gradientMatrix[i][h] + momentum * lastGradientMatrix[i][h]);
-				weightMatrix[i][h] -= lastGradientMatrix[i][h];
-				gradientMatrix[i][h] = 0;
-			}
 		
+		updateWeights(eta, momentum);
 		prevLayer.update(eta, momentum);
 	}
+
+	/**
+	 * Adjusts the weights of this layer only and uses a momentum, see {@link #update(double, double)}.
+	 * @param eta  The learning rate to be used.
+	 * @param momentum The proportion of the last weightMatrix adjustment.
+	 */
+	void updateWeights(double eta, double momentum) {
+		updateWeights(gradients, eta, momentum);
+	}
+
+	/**
+	 * Adjusts the weights of this layer only with the given weight modifications and uses a momentum,
+	 * see {@link #update(double, double)}.
+	 * @param gradient The weight modifications, they are reset to 0.
+	 * @param eta  The learning rate to be used.
+	 * @param momentum The proportion of the last weightMatrix adjustment.
+	 */
+	void updateWeights(double[] gradient, double eta, double momentum) {
+		Kernels.INSTANCE.update(weights, gradient, lastGradients, eta, momentum);
+	}
 	
+	/**
+	 * Returns the derivatives of the activation function for the last calculated output. They are computed from the
+	 * cached output, only the bias neuron, whose output is not the value of the activation function, uses its input.
+	 * @return The derivatives of all neurons. The array is reused by the next call.
+	 */
+	double[] derivations() {
+		if (derivations == null)
+			derivations = new double[output.length];
+
+		int last = output.length - 1;
+		function.derivationFromOutput(output, derivations, 0, last);
+		derivations[last] = function.derivation(layerInput[last]);
+		return derivations;
+	}
+
 	/**
 	 *  Returns the current Bias.
 	 * @return The current bias.
@@ -203,18 +293,18 @@ public class Layer implements Serializable {
 	 */
 	@Override
 	public String toString() {
-		if (weightMatrix == null) return "";
+		if (weights == null) return "";
 
 		StringBuffer buffer = new StringBuffer();
 
 		buffer.append("lastLayer:");
-		for(int i = 0; i < weightMatrix[0].length; i++)
+		for(int i = 0; i < columns; i++)
 			buffer.append("\t[" + i + "]");
 		
 		for(int i = 0; i < output.length; i++){
 			buffer.append("\nNeuron [" + i + "]");
-			for(int h = 0; h < prevLayer.getSize(); h++)
-				buffer.append("\t" + weightMatrix[i][h]);
+			for(int h = 0; h < columns; h++)
+				buffer.append("\t" + weights[i * columns + h]);
 		}
 		return buffer.toString();
 	}
@@ -229,10 +319,16 @@ public class Layer implements Serializable {
 
 	/**
 	 * Returns the WeightMatrix of the connection of this layer to the previous one.
+	 * The matrix is a copy of the internal row-major storage, changing it does not affect the layer.
 	 * @return the connecting WeightMatrix.
 	 */
 	public double[][] getWeightMatrix() {
-		return this.weightMatrix;
+		if (weights == null) return null;
+
+		double[][] matrix = new double[output.length][];
+		for (int h = 0; h < matrix.length; h++)
+			matrix[h] = Arrays.copyOfRange(weights, h * columns, (h + 1) * columns);
+		return matrix;
 	}
 	
 	/**
@@ -294,4 +390,41 @@ public class Layer implements Serializable {
 
 		return getOutput();
 	}
+
+	/**
+	 * Reads the layer and converts the double[][] matrices written by older versions into the row-major storage.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+
+		prevLayer = (Layer) fields.get("prevLayer", null);
+		function = (ActivationFunction) fields.get("function", null);
+		output = (double[]) fields.get("output", null);
+		input = (double[]) fields.get("input", null);
+		bias = fields.get("bias", 0.0);
+		layerInput = (double[]) fields.get("layerInput", null);
+
+		if (fields.getObjectStreamClass().getField("weightMatrix") == null) {
+			weights = (double[]) fields.get("weights", null);
+			gradients = (double[]) fields.get("gradients", null);
+			lastGradients = (double[]) fields.get("lastGradients", null);
+			columns = fields.get("columns", 0);
+			return;
+		}
+
+		double[][] weightMatrix = (double[][]) fields.get("weightMatrix", null);
+		if (weightMatrix == null) return;
+
+		columns = weightMatrix[0].length;
+		weights = flatten(weightMatrix);
+		gradients = flatten((double[][]) fields.get("gradientMatrix", null));
+		lastGradients = flatten((double[][]) fields.get("lastGradientMatrix", null));
+	}
+
+	private double[] flatten(double[][] matrix) {
+		double[] flat = new double[matrix.length * columns];
+		for (int h = 0; h < matrix.length; h++)
+			System.arraycopy(matrix[h], 0, flat, h * columns, columns);
+		return flat;
+	}
 }
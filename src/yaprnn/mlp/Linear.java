@@ -1,5 +1,7 @@
 package yaprnn.mlp;
 
+import java.util.Arrays;
+
 /**
  * This {@link ActivationFunction} simply returns the intput value. Therefor the derivation is always 1.
  */
@@ -22,6 +24,36 @@ public class Linear implements ActivationFunction{
 		return 1;
 	}
 
+	/**
+	 * Computes the function's derivation from the function's value y.
+	 * @return the function's derivation, always 1.
+	 */
+	public double derivationFromOutput(double y) {
+		return 1;
+	}
+
+	/**
+	 * Copies the parameters, see {@link ActivationFunction#compute(double[], double[], int, int)}.
+	 */
+	public void compute(double[] x, double[] y, int from, int to) {
+		if (x != y)
+			System.arraycopy(x, from, y, from, to - from);
+	}
+
+	/**
+	 * Sets the derivations to 1, see {@link ActivationFunction#derivation(double[], double[], int, int)}.
+	 */
+	public void derivation(double[] x, double[] result, int from, int to) {
+		Arrays.fill(result, from, to, 1);
+	}
+
+	/**
+	 * Sets the derivations to 1, see {@link ActivationFunction#derivationFromOutput(double[], double[], int, int)}.
+	 */
+	public void derivationFromOutput(double[] y, double[] result, int from, int to) {
+		Arrays.fill(result, from, to, 1);
+	}
+
 	/**
 	 * The function's string presentation.
 	 * @return the name
@@ -1,6 +1,5 @@
 package yaprnn.mlp;
 
-import java.io.Serializable;
 import java.util.Collection;
 
 import yaprnn.dvv.Data;
@@ -8,13 +7,26 @@ import yaprnn.dvv.Data;
 /**
  * This class represents the MLP and makes heavy use of the class {@link Layer}.
  */
-public class MLP implements Serializable {
+public class MLP implements MultiLayerPerceptron {
 
 	private static final long serialVersionUID = -5212835785366190139L;
 
 	private Layer[] layer; 
 	int iterations = 0;
 
+	// Larger batches are passed through the network in several parts
+	private static final int MAX_BATCH_ROWS = 256;
+
+	// Error buffers of the layers, errors[l] receives the error of layer l
+	private transient double[][] errors;
+	private transient MiniBatch miniBatch;
+	private transient ParallelBatch parallelBatch;
+	private transient ParallelOnline parallelOnline;
+
+	private transient boolean profiling;
+	private transient long[] forwardTime;
+	private transient long[] backwardTime;
+
 	/**
 	 * Builds the Network and sets all necessary variables.
 	 * 
@@ -89,46 +101,69 @@ public class MLP implements Serializable {
 			return 0;
 		
 		Layer outLayer = layer[layer.length - 1];
-		ActivationFunction outAVF = outLayer.getActivationFunction();
 		int outLayerSize = outLayer.getSize();
 
-		double[] errVec = new double[outLayerSize];
+		double[] errVec = errors()[layer.length - 1];
 
 		for (Data theData : dataCollection) {
 			// get the index where the target value is 1
 			int target = theData.getTarget(); 
 
 			// Sets the input data
-			if(!layer[0].setInput(theData.getData()))
+			if(!layer[0].setInput(theData))
 				System.out.println("Can't set input data!");
 
 			// Calculate the output
-			double[] out = outLayer.getOutput();
+			double[] out = forward();
 
 			// Calculates the error of the output layer
+			double[] derivations = outLayer.derivations();
 			for (int h = 0; h < outLayerSize; h++)
 				if(h == target)
-					errVec[h] = (out[h] - 1) * outAVF.derivation(outLayer.layerInput[h]);
+					errVec[h] = (out[h] - 1) * derivations[h];
 				else
-					errVec[h] = out[h] * outAVF.derivation(outLayer.layerInput[h]);
+					errVec[h] = out[h] * derivations[h];
 
 			// Error backpropagation 
-			/*System.out.println("Mittlerer Gadient: " + */
-			outLayer.backPropagate(errVec)
-			/* / layer.length)*/;
+			backPropagate(errVec);
 			
 			// Adjust the weights
-			if(momentum > 0)
-				outLayer.update(eta, momentum);
-			else
-				outLayer.update(eta);
+			update(eta, momentum);
 
 		}
 
 		return runTest(dataCollection);
 	}
 
-	/**This function performs the batch calculation  with the Network
+	/**
+	 * This function performs the online calculation with several threads at once using {@link ParallelOnline}.
+	 * Every thread trains with its own part of the data and adjusts the shared weights without locking, so the
+	 * result depends on the scheduling of the threads.
+	 *  
+	 * @param dataCollection A collection of the type {@link Data} with input and target values.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 * @param threads The number of threads; with one thread this is the same as {@link #runOnline(Collection, double, double)}.
+	 * @return The Training error computed by the function {@link #runTest(Collection)}. In case of an  error returns 0.
+	 */
+	public double runOnline(Collection<Data> dataCollection, double eta, double momentum, int threads) {
+		if (threads <= 1)
+			return runOnline(dataCollection, eta, momentum);
+		if (layer == null)
+			return 0;
+
+		if (parallelOnline == null || parallelOnline.getThreads() != threads) {
+			if (parallelOnline != null)
+				parallelOnline.shutdown();
+			parallelOnline = new ParallelOnline(layer, threads);
+		}
+		parallelOnline.train(dataCollection.toArray(new Data[dataCollection.size()]), eta, momentum);
+
+		return runTest(dataCollection);
+	}
+
+	/**This function performs the batch calculation  with the Network. The samples are passed through the network
+	 * in mini-batches of up to batchSize samples using {@link MiniBatch}.
 	 * 
  	 * @param dataCollection A collection of the type {@link Data}a with input and target values.
 	 *            
@@ -137,49 +172,68 @@ public class MLP implements Serializable {
 	 */
 	
 	public double runBatch(Collection<Data> dataCollection, int batchSize, double eta, double momentum) {
+		return runBatch(dataCollection, batchSize, eta, momentum, 1);
+	}
+
+	/**This function performs the batch calculation with the Network like {@link #runBatch(Collection, int, double, double)},
+	 * but splits every batch into parts which are calculated by several threads using {@link ParallelBatch}.
+	 * 
+ 	 * @param dataCollection A collection of the type {@link Data}a with input and target values.
+	 * @param batchSize The number of samples after which the weights are adjusted.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 * @param threads The number of threads; with one thread the batches are calculated by the calling thread.
+	 * @return The Training error computed by the function {@link #runTest(Collection)}. In case of an  error returns 0.
+	 */
+	public double runBatch(Collection<Data> dataCollection, int batchSize, double eta, double momentum, int threads) {
 		if (layer == null)
 			return 0;
 
-		Layer outLayer = layer[layer.length - 1];
-		ActivationFunction outAVF = outLayer.getActivationFunction();
-		int outLayerSize = outLayer.getSize();
-
-		double[] errVec = new double[outLayerSize];
-		
-		for (Data theData : dataCollection) {
-			// get the index where the target value is 1
-			int target = theData.getTarget(); 
-
-			// Sets the input data
-			if(!layer[0].setInput(theData.getData()))
-				System.out.println("Can't set input data!");
-
-			// Calculate the output
-			double[] out = outLayer.getOutput();
-
-			// Calculates the error of the output layer
-			for (int h = 0; h < outLayerSize; h++)
-				if(h == target)
-					errVec[h] = (out[h] - 1) * outAVF.derivation(outLayer.layerInput[h]);
-				else
-					errVec[h] = out[h] * outAVF.derivation(outLayer.layerInput[h]);
-
-			// Error backpropagation 
-			System.out.println("Mittlerer Gadient: " + outLayer.backPropagate(errVec) / layer.length);
-			iterations++;
+		Data[] samples = dataCollection.toArray(new Data[dataCollection.size()]);
+		MiniBatch batch = threads > 1 ? null : miniBatch(batchSize);
+		ParallelBatch parallel = threads > 1 ? parallelBatch(batchSize, threads) : null;
+		int capacity = threads > 1 ? parallel.getCapacity() : batch.getCapacity();
+		double[][] gradients = new double[layer.length][];
+		for (int l = 1; l < layer.length; l++)
+			gradients[l] = layer[l].gradients;
+
+		int from = 0;
+		while (from < samples.length) {
+			// A batch may have been started in the last call, so it ends at the next multiple of batchSize
+			int to = Math.min(from + batchSize - iterations % batchSize, samples.length);
+			to = Math.min(to, from + capacity);
+
+			if (parallel != null)
+				parallel.backPropagate(samples, from, to, gradients);
+			else {
+				batch.setInput(samples, from, to);
+				batch.forward();
+				batch.outputError(samples, from);
+				batch.backPropagate(gradients);
+			}
+			iterations += to - from;
 
 			if(iterations % batchSize == 0 ) {
 				// Adjust the weights
-				if(momentum > 0)
-					outLayer.update(eta, momentum);
-				else
-					outLayer.update(eta);
+				update(eta, momentum);
 			}
-
+			from = to;
 		}
 		return runTest(dataCollection);
 	}
 	
+	/**
+	 * Returns the {@link MiniBatch} used by {@link #runBatch(Collection, int, double, double)}. It is allocated once
+	 * and reused as long as the batch size does not grow.
+	 * @param batchSize The number of samples of one batch.
+	 * @return The mini-batch.
+	 */
+	private MiniBatch miniBatch(int batchSize) {
+		int capacity = Math.min(batchSize, MAX_BATCH_ROWS);
+		if (miniBatch == null || miniBatch.getCapacity() < capacity)
+			miniBatch = new MiniBatch(layer, capacity);
+		return miniBatch;
+	}
 
 	/**
 	 * This method performs a test using delivered data.
@@ -192,7 +246,6 @@ public class MLP implements Serializable {
 			return 0;
 
 		Layer outLayer = layer[layer.length - 1];
-		ActivationFunction outAVF = outLayer.getActivationFunction();
 		int outLayerSize = outLayer.getSize();
 		
 		double err = 0;
@@ -202,19 +255,20 @@ public class MLP implements Serializable {
 			int target = theData.getTarget(); 
 
 			// Sets the input data
-			if (!layer[0].setInput(theData.getData()))
+			if (!layer[0].setInput(theData))
 				return 0;
 
 			// Calculate the output
-			double[] out = outLayer.getOutput();
+			double[] out = forward();
 
 			// Calculates the error of the output layer
+			double[] derivations = outLayer.derivations();
 			for (int h = 0; h < outLayerSize; h++) {
 				double v;
 				if(h == target)
-					v = (out[h] - 1) * outAVF.derivation(outLayer.layerInput[h]);
+					v = (out[h] - 1) * derivations[h];
 				else
-					v = out[h] * outAVF.derivation(outLayer.layerInput[h]);
+					v = out[h] * derivations[h];
 
 				err += v * v;
 			}
@@ -230,22 +284,208 @@ public class MLP implements Serializable {
 	 * @return The output of neurons in percents.
 	 */
 	public double[] classify(double[] input) {
+		return classify(input, new double[layer[layer.length - 1].getSize()]);
+	}
+
+	/**
+	 * This method is used to classify a given input vector without allocating a new result.
+	 * @param input The input to classify with a dimension equal to the input neurons.
+	 * @param retVal Receives the output of neurons in percents, its dimension has to be equal to the output neurons.
+	 * @return retVal
+	 */
+	public double[] classify(double[] input, double[] retVal) {
 		layer[0].setInput(input);
-		double[] netOutput = layer[layer.length - 1].getOutput();
-		double[] retVal = new double[netOutput.length];
+		return toPercent(forward(), 0, retVal);
+	}
+
+	/**
+	 * This method is used to classify many input vectors at once. They are passed through the network in
+	 * mini-batches using {@link MiniBatch}.
+	 * @param inputs The inputs to classify with a dimension equal to the input neurons.
+	 * @return The output of neurons in percents for every input.
+	 */
+	public double[][] classify(double[][] inputs) {
+		return classify(inputs, 1);
+	}
+
+	/**
+	 * This method is used to classify many input vectors at once like {@link #classify(double[][])}, but splits
+	 * every mini-batch into parts which are calculated by several threads using {@link ParallelBatch}.
+	 * @param inputs The inputs to classify with a dimension equal to the input neurons.
+	 * @param threads The number of threads; with one thread the inputs are classified by the calling thread.
+	 * @return The output of neurons in percents for every input.
+	 */
+	public double[][] classify(double[][] inputs, int threads) {
+		double[][] result = new double[inputs.length][layer[layer.length - 1].getSize()];
+
+		MiniBatch batch = threads > 1 ? null : miniBatch(MAX_BATCH_ROWS);
+		ParallelBatch parallel = threads > 1 ? parallelBatch(MAX_BATCH_ROWS * threads, threads) : null;
+		int capacity = threads > 1 ? parallel.getCapacity() : batch.getCapacity();
+
+		for (int from = 0; from < inputs.length; from += capacity) {
+			int to = Math.min(from + capacity, inputs.length);
+			if (parallel != null)
+				parallel.classify(inputs, from, to, result);
+			else {
+				batch.setInput(inputs, from, to);
+				batch.forward();
+				batch.classify(result, from);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns an immutable copy of the current weights, which may be used by several threads at once to classify.
+	 * @return The snapshot.
+	 */
+	public MLPSnapshot snapshot() {
+		return new MLPSnapshot(layer);
+	}
 
+	/**
+	 * Converts an output vector of the network into percents.
+	 * @param netOutput Holds the output vector.
+	 * @param offset Index of the first output in netOutput.
+	 * @param retVal Receives the percents, it has the size of the output layer.
+	 * @return retVal
+	 */
+	static double[] toPercent(double[] netOutput, int offset, double[] retVal) {
 		for(int i = 0; i < retVal.length; i++)
-			retVal[i] = Math.exp(10 * netOutput[i]);
+			retVal[i] = Math.exp(10 * netOutput[offset + i]);
 		// Sum up
 		double sum = 0;
 		for(double v : retVal) sum += v;
 		
-		for(int i = 0; i < netOutput.length; i++)
+		for(int i = 0; i < retVal.length; i++)
 			retVal[i] = retVal[i] *  100/ sum;
 
 		return retVal;
 	}
 
+	/**
+	 * Calculates the output of the network for the input set at the input layer by walking the layers from the
+	 * first hidden layer to the output layer.
+	 * @return The output vector of the output layer.
+	 */
+	private double[] forward() {
+		double[] out = null;
+		for (int l = 1; l < layer.length; l++) {
+			long start = profiling ? System.nanoTime() : 0;
+			out = layer[l].forward();
+			if (profiling)
+				forwardTime[l] += System.nanoTime() - start;
+		}
+		return out;
+	}
+
+	/**
+	 * Propagates the error of the output layer back to the first hidden layer and saves the weight modifications of
+	 * every layer.
+	 * @param errVec The error of the output layer.
+	 * @return The sum of the mean gradients of all layers.
+	 */
+	private double backPropagate(double[] errVec) {
+		double[][] errors = errors();
+		double retVal = 0;
+		double[] error = errVec;
+		for (int l = layer.length - 1; l > 0; l--) {
+			long start = profiling ? System.nanoTime() : 0;
+			// The error of the input layer is never used
+			double[] preLayerError = l > 1 ? errors[l - 1] : null;
+			retVal += layer[l].backPropagate(error, preLayerError);
+			error = preLayerError;
+			if (profiling)
+				backwardTime[l] += System.nanoTime() - start;
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the {@link ParallelBatch} used by {@link #runBatch(Collection, int, double, double, int)}. It is
+	 * allocated once and reused as long as neither the batch size grows nor the number of threads changes.
+	 * @param batchSize The number of samples of one batch.
+	 * @param threads The number of threads.
+	 * @return The parallel mini-batch.
+	 */
+	private ParallelBatch parallelBatch(int batchSize, int threads) {
+		int capacity = Math.min((batchSize + threads - 1) / threads, MAX_BATCH_ROWS);
+		if (parallelBatch == null || parallelBatch.getThreads() != threads
+				|| parallelBatch.getCapacity() < capacity * threads) {
+			if (parallelBatch != null)
+				parallelBatch.shutdown();
+			parallelBatch = new ParallelBatch(layer, capacity, threads);
+		}
+		return parallelBatch;
+	}
+
+	/**
+	 * Returns the error buffers of all layers. They are allocated once and reused for every sample.
+	 * @return The error buffers, the buffer of the input layer is null.
+	 */
+	private double[][] errors() {
+		if (errors == null) {
+			errors = new double[layer.length][];
+			for (int l = 1; l < layer.length; l++)
+				errors[l] = new double[layer[l].getSize()];
+		}
+		return errors;
+	}
+
+	/**
+	 * Adjusts the weights of all layers with the saved weight modifications.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 */
+	private void update(double eta, double momentum) {
+		for (int l = layer.length - 1; l > 0; l--) {
+			long start = profiling ? System.nanoTime() : 0;
+			if (momentum > 0)
+				layer[l].updateWeights(eta, momentum);
+			else
+				layer[l].updateWeights(eta);
+			if (profiling)
+				backwardTime[l] += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Enables or disables measuring the time spent in each layer. Enabling resets the measured times.
+	 * @param profiling true to measure the times.
+	 */
+	public void setProfiling(boolean profiling) {
+		if (profiling) {
+			forwardTime = new long[layer.length];
+			backwardTime = new long[layer.length];
+		}
+		this.profiling = profiling;
+	}
+
+	/**
+	 * Returns the time spent calculating the output of the given {@link Layer} since profiling was enabled.
+	 * @param layer Index of the requested layer.
+	 * @return The time in nanoseconds, 0 if profiling was never enabled.
+	 */
+	public long getForwardTime(int layer) {
+		if (forwardTime == null || layer > (this.layer.length - 1))
+			return 0;
+
+		return forwardTime[layer];
+	}
+
+	/**
+	 * Returns the time spent propagating the error and adjusting the weights of the given {@link Layer} since
+	 * profiling was enabled.
+	 * @param layer Index of the requested layer.
+	 * @return The time in nanoseconds, 0 if profiling was never enabled.
+	 */
+	public long getBackwardTime(int layer) {
+		if (backwardTime == null || layer > (this.layer.length - 1))
+			return 0;
+
+		return backwardTime[layer];
+	}
+
 	/**
 	 * String-representation of the neuronal network
 	 * @return An ascii presentation of the network's weights.
@@ -295,6 +535,15 @@ public class MLP implements Serializable {
 		return this.layer[layer].getSize();
 	}
 
+	/**
+	 * Returns the given {@link Layer}.
+	 * @param layer Index of the requested layer.
+	 * @return The layer.
+	 */
+	Layer getLayer(int layer) {
+		return this.layer[layer];
+	}
+
 	/**
 	 * Returns the size of the MLP.
 	 * @return The size of the MLP.
@@ -0,0 +1,394 @@
+package yaprnn.mlp;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import yaprnn.dvv.Data;
+
+/**
+ * This class reads and writes the binary file format of a {@link MLPStub}. Unlike Java serialization it stores only
+ * the configuration and the weights, all values are little-endian:
+ *
+ * <pre>
+ * int      magic "YMLP", version
+ * string   name, data type
+ * int      flags (1 = trained, 2 = single precision)
+ * int      autoencoder iterations; double autoencoder error, autoencoder eta
+ * int      number of layers n; int[n] layer sizes
+ * n times  activation id: string class name, string toString()
+ * double[n] biases
+ * </pre>
+ *
+ * If the network is trained, the weights of the layers 1 to n-1 follow, each layer starts at a multiple of 8 bytes
+ * and holds (size + 1) * (previous size + 1) doubles or floats in the row-major order of {@link Layer}. A string is
+ * stored as its number of UTF-8 bytes followed by the bytes, -1 stands for null. The gradients and momentums are not
+ * stored, a loaded network starts with new ones.
+ * <p>
+ * An activation function is identified by its class and name. When reading, a registered function with both is
+ * used, otherwise the class is instantiated with its constructor without arguments. Networks using a function for
+ * which neither is possible, e.g. an {@link InterpolatedFunction} which is not registered, can not be written.
+ */
+public class MLPFile {
+
+	/** "YMLP" read as little-endian int. */
+	static final int MAGIC = 0x504C4D59;
+	/** The current version of the format. */
+	static final int VERSION = 1;
+
+	static final int FLAG_TRAINED = 1;
+	static final int FLAG_SINGLE_PRECISION = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The configuration read from a file.
+	 */
+	static class Header {
+		/** The configuration without network. */
+		final MLPStub stub;
+		/** True if the weights follow the configuration. */
+		final boolean trained;
+
+		Header(MLPStub stub, boolean trained) {
+			this.stub = stub;
+			this.trained = trained;
+		}
+	}
+
+	private MLPFile() {
+	}
+
+	/**
+	 * Tests whether the given file starts with the magic number of the binary format.
+	 * @param filename The file to test.
+	 * @return true if it is a binary MLP file.
+	 * @throws IOException if the file can not be read.
+	 */
+	public static boolean isBinary(String filename) throws IOException {
+		FileInputStream in = new FileInputStream(filename);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(in.getChannel(), buffer);
+			return buffer.remaining() == 4 && buffer.getInt() == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the given MLP into a file.
+	 * @param stub The MLP to write.
+	 * @param filename The name of the file.
+	 * @throws IOException if the file can not be written.
+	 */
+	public static void write(MLPStub stub, String filename) throws IOException {
+		// Only networks which can be read again are written
+		for (ActivationFunction function : stub.getActivationFunctions())
+			if (function != null && !isRegistered(function, stub.getAllActivations())
+					&& !hasDefaultConstructor(function.getClass()))
+				throw new IOException("The activation function can not be stored: " + function);
+
+		RandomAccessFile file = new RandomAccessFile(filename, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			channel.truncate(0);
+			writeFully(channel, header(stub));
+
+			MultiLayerPerceptron network = stub.network();
+			if (network != null)
+				for (int l = 1; l < stub.getNumLayers(); l++)
+					writeFully(channel, weights(network, l));
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Reads a MLP from a binary file.
+	 * @param filename The name of the file.
+	 * @param allActivations The registered activation functions, see {@link yaprnn.Core#getAllActivationFunctions()}.
+	 * @return The MLP.
+	 * @throws IOException if the file can not be read or is not a binary MLP file.
+	 */
+	public static MLPStub read(String filename, List<ActivationFunction> allActivations) throws IOException {
+		FileInputStream in = new FileInputStream(filename);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, buffer);
+			return read(buffer, allActivations);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a MLP which has been written by Java serialization of older versions.
+	 * @param filename The name of the file.
+	 * @return The MLP.
+	 * @throws IOException if the file can not be read.
+	 * @throws ClassNotFoundException if the file contains unknown classes.
+	 */
+	public static MLPStub importSerialized(String filename) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename));
+		try {
+			return (MLPStub) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Converts serialized MLP files into the binary format.
+	 * @param args Pairs of the serialized file and the binary file to create.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0 || args.length % 2 != 0) {
+			System.out.println("Usage: MLPFile <serialized.mlp> <binary.mlp> ...");
+			return;
+		}
+		for (int i = 0; i < args.length; i += 2) {
+			write(importSerialized(args[i]), args[i + 1]);
+			System.out.println(args[i] + " -> " + args[i + 1]);
+		}
+	}
+
+	/**
+	 * Reads the configuration and the weights from the buffer.
+	 * @param buffer The content of the file, starting at the magic number.
+	 * @param allActivations The registered activation functions.
+	 * @return The MLP.
+	 * @throws IOException if the buffer does not contain a binary MLP.
+	 */
+	static MLPStub read(ByteBuffer buffer, List<ActivationFunction> allActivations) throws IOException {
+		Header header = readHeader(buffer, allActivations);
+		MLPStub stub = header.stub;
+		if (!header.trained)
+			return stub;
+
+		try {
+			MultiLayerPerceptron network = stub.createNetwork();
+			for (int l = 1; l < stub.getNumLayers(); l++) {
+				align(buffer);
+				if (stub.isSinglePrecision())
+					buffer.asFloatBuffer().get(((FloatMLP) network).getLayer(l).weights);
+				else
+					buffer.asDoubleBuffer().get(((MLP) network).getLayer(l).weights);
+				buffer.position(buffer.position() + weightCount(stub, l) * (stub.isSinglePrecision() ? 4 : 8));
+			}
+		} catch (BadConfigException e) {
+			throw new IOException("Invalid configuration: " + e.getMessage());
+		} catch (RuntimeException e) {
+			throw new IOException("Truncated MLP file");
+		}
+		return stub;
+	}
+
+	/**
+	 * Reads the configuration from the buffer, the buffer is positioned after the biases afterwards.
+	 * @param buffer The content of the file, starting at the magic number.
+	 * @param allActivations The registered activation functions.
+	 * @return The configuration without network.
+	 * @throws IOException if the buffer does not contain a binary MLP.
+	 */
+	static Header readHeader(ByteBuffer buffer, List<ActivationFunction> allActivations) throws IOException {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			if (buffer.getInt() != MAGIC)
+				throw new IOException("Not a MLP file");
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported MLP file version: " + version);
+
+			String name = readString(buffer);
+			String typeName = readString(buffer);
+			Data.Type type = typeName == null ? null : Data.Type.valueOf(typeName);
+			int flags = buffer.getInt();
+			int maxIterations = buffer.getInt();
+			double maxError = buffer.getDouble();
+			double eta = buffer.getDouble();
+
+			int numLayers = buffer.getInt();
+			if (numLayers < 2)
+				throw new IOException("Invalid number of layers: " + numLayers);
+			int[] layers = new int[numLayers];
+			for (int l = 0; l < numLayers; l++)
+				layers[l] = buffer.getInt();
+			ActivationFunction[] activations = new ActivationFunction[numLayers];
+			for (int l = 0; l < numLayers; l++)
+				activations[l] = findActivation(readString(buffer), readString(buffer), allActivations);
+			double[] biases = new double[numLayers];
+			for (int l = 0; l < numLayers; l++)
+				biases[l] = buffer.getDouble();
+
+			MLPStub stub = new MLPStub(name, type, layers, activations, biases,
+					(flags & FLAG_SINGLE_PRECISION) != 0, maxIterations, maxError, eta, allActivations);
+			return new Header(stub, (flags & FLAG_TRAINED) != 0);
+		} catch (RuntimeException e) {
+			throw new IOException("Truncated or corrupt MLP file");
+		}
+	}
+
+	/**
+	 * Returns the number of weights of the given layer.
+	 */
+	static int weightCount(MLPStub stub, int layer) {
+		return (stub.getLayerSize(layer) + 1) * (stub.getLayerSize(layer - 1) + 1);
+	}
+
+	/**
+	 * Moves the position of the buffer to the next multiple of 8.
+	 */
+	static void align(ByteBuffer buffer) {
+		buffer.position((buffer.position() + 7) & ~7);
+	}
+
+	private static ByteBuffer header(MLPStub stub) {
+		int numLayers = stub.getNumLayers();
+		ActivationFunction[] activations = stub.getActivationFunctions();
+		double[] biases = stub.getBiases();
+		byte[] name = bytes(stub.getName());
+		byte[] type = bytes(stub.getDataType() == null ? null : stub.getDataType().name());
+		byte[][] classes = new byte[numLayers][];
+		byte[][] names = new byte[numLayers][];
+		int size = 4 + 4 + length(name) + length(type) + 4 + 4 + 8 + 8 + 4 + 4 * numLayers + 8 * numLayers;
+		for (int l = 0; l < numLayers; l++) {
+			ActivationFunction function = activations[l];
+			classes[l] = bytes(function == null ? null : function.getClass().getName());
+			names[l] = bytes(function == null ? null : function.toString());
+			size += length(classes[l]) + length(names[l]);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((size + 7) & ~7).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		putString(buffer, name);
+		putString(buffer, type);
+		int flags = 0;
+		if (stub.network() != null)
+			flags |= FLAG_TRAINED;
+		if (stub.isSinglePrecision())
+			flags |= FLAG_SINGLE_PRECISION;
+		buffer.putInt(flags);
+		buffer.putInt(stub.getAutoencoderIterations());
+		buffer.putDouble(stub.getAutoencoderError());
+		buffer.putDouble(stub.getAutoencoderEta());
+		buffer.putInt(numLayers);
+		for (int l = 0; l < numLayers; l++)
+			buffer.putInt(stub.getLayerSize(l));
+		for (int l = 0; l < numLayers; l++) {
+			putString(buffer, classes[l]);
+			putString(buffer, names[l]);
+		}
+		for (int l = 0; l < numLayers; l++)
+			buffer.putDouble(biases[l]);
+
+		// The padding up to the weights stays 0
+		buffer.position(buffer.capacity());
+		buffer.flip();
+		return buffer;
+	}
+
+	private static ByteBuffer weights(MultiLayerPerceptron network, int l) {
+		ByteBuffer buffer;
+		if (network instanceof FloatMLP) {
+			float[] weights = ((FloatMLP) network).getLayer(l).weights;
+			buffer = ByteBuffer.allocate((weights.length * 4 + 7) & ~7).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.asFloatBuffer().put(weights);
+		} else {
+			double[] weights = ((MLP) network).getLayer(l).weights;
+			buffer = ByteBuffer.allocate(weights.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.asDoubleBuffer().put(weights);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Returns the registered activation function with the given class and name. If there is none, a new instance of
+	 * the class is created.
+	 */
+	private static ActivationFunction findActivation(String className, String name,
+			List<ActivationFunction> allActivations) throws IOException {
+		if (className == null)
+			return null;
+
+		if (allActivations != null)
+			for (ActivationFunction function : allActivations)
+				if (function.getClass().getName().equals(className) && function.toString().equals(name))
+					return function;
+
+		try {
+			return (ActivationFunction) Class.forName(className).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new IOException("Unknown activation function: " + name);
+		}
+	}
+
+	/**
+	 * Tests whether a function with the same class and name is registered.
+	 */
+	private static boolean isRegistered(ActivationFunction function, List<ActivationFunction> allActivations) {
+		if (allActivations != null)
+			for (ActivationFunction registered : allActivations)
+				if (registered.getClass() == function.getClass() && registered.toString().equals(function.toString()))
+					return true;
+		return false;
+	}
+
+	/**
+	 * Tests whether the class can be instantiated by {@link #findActivation(String, String, List)}.
+	 */
+	private static boolean hasDefaultConstructor(Class<?> c) {
+		try {
+			c.getDeclaredConstructor();
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s == null ? null : s.getBytes(UTF8);
+	}
+
+	private static int length(byte[] bytes) {
+		return 4 + (bytes == null ? 0 : bytes.length);
+	}
+
+	private static void putString(ByteBuffer buffer, byte[] bytes) {
+		if (bytes == null) {
+			buffer.putInt(-1);
+			return;
+		}
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			if (channel.read(buffer) < 0)
+				break;
+		buffer.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
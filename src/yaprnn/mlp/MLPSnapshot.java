@@ -0,0 +1,108 @@
+package yaprnn.mlp;
+
+/**
+ * This object is an immutable copy of the weights of a trained {@link MLP}, which can only classify. Unlike the
+ * {@link MLP} it does not keep the outputs of the layers in shared fields but in buffers of the calling thread, so
+ * several threads may classify with the same snapshot at once without locking. Training the {@link MLP} afterwards
+ * does not change the snapshot. The results equal those of {@link MLP#classify(double[], double[])} at the time the
+ * snapshot was taken.
+ */
+public final class MLPSnapshot {
+
+	// The number of neurons of every layer including the bias neuron
+	private final int[] sizes;
+	private final ActivationFunction[] functions;
+	private final double[] biases;
+	// The row-major weights of every layer like in Layer
+	private final double[][] weights;
+
+	// The outputs of all layers, one set per thread
+	private final ThreadLocal<double[][]> outputs = new ThreadLocal<double[][]>() {
+		@Override
+		protected double[][] initialValue() {
+			double[][] result = new double[sizes.length][];
+			for (int l = 0; l < sizes.length; l++)
+				result[l] = new double[sizes[l]];
+			return result;
+		}
+	};
+
+	/**
+	 * Constructor; Copies the weights of the given layers.
+	 * @param layer The layers of the network, the first one is the input layer.
+	 */
+	MLPSnapshot(Layer[] layer) {
+		sizes = new int[layer.length];
+		functions = new ActivationFunction[layer.length];
+		biases = new double[layer.length];
+		weights = new double[layer.length][];
+		for (int l = 0; l < layer.length; l++) {
+			sizes[l] = layer[l].getSize();
+			functions[l] = layer[l].getActivationFunction();
+			biases[l] = layer[l].getBias();
+			if (l > 0)
+				weights[l] = layer[l].weights.clone();
+		}
+	}
+
+	/**
+	 * Classifies a given input vector.
+	 * @param input The input to classify with a dimension equal to the input neurons.
+	 * @return The output of neurons in percents.
+	 */
+	public double[] classify(double[] input) {
+		return classify(input, new double[sizes[sizes.length - 1]]);
+	}
+
+	/**
+	 * Classifies a given input vector without allocating a new result.
+	 * @param input The input to classify with a dimension equal to the input neurons.
+	 * @param retVal Receives the output of neurons in percents.
+	 * @return retVal
+	 */
+	public double[] classify(double[] input, double[] retVal) {
+		if (input.length != sizes[0] - 1)
+			throw new IllegalArgumentException("Invalid input dimension: " + input.length);
+
+		double[][] out = outputs.get();
+		System.arraycopy(input, 0, out[0], 0, input.length);
+		out[0][input.length] = 0;
+
+		for (int l = 1; l < sizes.length; l++)
+			forward(l, out[l - 1], out[l]);
+
+		return MLP.toPercent(out[sizes.length - 1], 0, retVal);
+	}
+
+	/**
+	 * Returns the number of input neurons.
+	 * @return The dimension of the input vectors.
+	 */
+	public int getInputSize() {
+		return sizes[0] - 1;
+	}
+
+	/**
+	 * Returns the number of values returned by {@link #classify(double[])}, which includes the bias neuron of the
+	 * output layer like {@link MLP#classify(double[])}.
+	 * @return The dimension of the output vectors.
+	 */
+	public int getOutputSize() {
+		return sizes[sizes.length - 1];
+	}
+
+	/**
+	 * Calculates the output of a layer like {@link Layer#forward()}.
+	 */
+	private void forward(int l, double[] in, double[] out) {
+		Kernels kernels = Kernels.INSTANCE;
+		int columns = sizes[l - 1];
+		double[] w = weights[l];
+
+		for (int h = 0, row = 0; h < out.length - 1; h++, row += columns)
+			out[h] = kernels.dot(in, 0, w, row, columns);
+
+		functions[l].compute(out, out, 0, out.length - 1);
+		out[out.length - 1] = biases[l];
+	}
+}
@@ -16,6 +16,8 @@ public class MLPStub implements Serializable, NeuralNetwork {
 	private double[] biases;
 	private boolean autoEncoder;
 	private MLP mlp;
+	private FloatMLP floatMlp;
+	private boolean singlePrecision;
 	private List<ActivationFunction> allActivations;
 	private int maxIterations;
 	private double maxError;
@@ -38,6 +40,26 @@ public class MLPStub implements Serializable, NeuralNetwork {
 		layers[0] = 1;
 	}
 
+	/**
+	 * Creates an untrained configuration read by {@link MLPFile}. The arrays
+	 * hold the values of all layers including the input layer.
+	 */
+	MLPStub(String name, Data.Type type, int[] layers,
+			ActivationFunction[] activations, double[] biases,
+			boolean singlePrecision, int maxIterations, double maxError,
+			double eta, List<ActivationFunction> allActivations) {
+		this.name = name;
+		this.type = type;
+		this.layers = layers;
+		this.activations = activations;
+		this.biases = biases;
+		this.singlePrecision = singlePrecision;
+		this.maxIterations = maxIterations;
+		this.maxError = maxError;
+		this.eta = eta;
+		this.allActivations = allActivations;
+	}
+
 	/**
 	 * Deletes the current (trained) MLP but keeps the configuration.
 	 * 
@@ -45,6 +67,7 @@ public class MLPStub implements Serializable, NeuralNetwork {
 	 */
 	public void reset() {
 		mlp = null;
+		floatMlp = null;
 		maxIterations = 0;
 		maxError = 0.0;
 		eta = 0.0;
@@ -75,7 +98,7 @@ public class MLPStub implements Serializable, NeuralNetwork {
 
 	public void resetIterations() {
 		initMLP();
-		mlp.resetIterations();
+		network().resetIterations();
 	}
 
 	/**
@@ -92,7 +115,26 @@ public class MLPStub implements Serializable, NeuralNetwork {
 	public double runOnline(Collection<Data> dataCollection, double eta,
 			double momentum) throws BadConfigException {
 		initMLP();
-		return mlp.runOnline(dataCollection, eta, momentum);
+		return network().runOnline(dataCollection, eta, momentum);
+	}
+
+	/**
+	 * This function performs the online calculation with several threads,
+	 * which adjust the shared weights without locking.
+	 * 
+	 * @param dataCollection
+	 *            A collection of the type dvv.Data with input- and targetvalues
+	 * 
+	 * @param eta
+	 *            The learning rate to be used.
+	 * @param threads
+	 *            The number of threads to be used.
+	 * @throws BadConfigException
+	 */
+	public double runOnline(Collection<Data> dataCollection, double eta,
+			double momentum, int threads) throws BadConfigException {
+		initMLP();
+		return network().runOnline(dataCollection, eta, momentum, threads);
 	}
 
 	/**
@@ -108,7 +150,26 @@ public class MLPStub implements Serializable, NeuralNetwork {
 	public double runBatch(Collection<Data> dataCollection, int batchSize,
 			double eta, double momentum) {
 		initMLP();
-		return mlp.runBatch(dataCollection, batchSize, eta, momentum);
+		return network().runBatch(dataCollection, batchSize, eta, momentum);
+	}
+
+	/**
+	 * This function performs the batch calculation with the Network and
+	 * splits every batch across several threads.
+	 * 
+	 * @param dataCollection
+	 *            A collection of the type dvv.Data with input- and targetvalues
+	 * 
+	 * @param eta
+	 *            The learning rate to be used.
+	 * @param threads
+	 *            The number of threads to be used.
+	 * @return den Testfehler. In case of an error returns 0.
+	 */
+	public double runBatch(Collection<Data> dataCollection, int batchSize,
+			double eta, double momentum, int threads) {
+		initMLP();
+		return network().runBatch(dataCollection, batchSize, eta, momentum, threads);
 	}
 
 	/**
@@ -119,7 +180,7 @@ public class MLPStub implements Serializable, NeuralNetwork {
 	 * @return The test error. If an error occurse, returns 0.
 	 */
 	public double runTest(Collection<Data> dataCollection) {
-		return mlp.runTest(dataCollection);
+		return network().runTest(dataCollection);
 	}
 
 	/**
@@ -129,7 +190,70 @@ public class MLPStub implements Serializable, NeuralNetwork {
 	 */
 	public double[] classify(double[] input) {
 		initMLP();
-		return mlp.classify(input);
+		return network().classify(input);
+	}
+
+	/**
+	 * This method classifies many inputs at once.
+	 * 
+	 * @param inputs
+	 *            the inputs to classify
+	 * @param threads
+	 *            The number of threads to be used.
+	 * @return the output of neurons in percents for every input.
+	 */
+	public double[][] classify(double[][] inputs, int threads) {
+		initMLP();
+		return network().classify(inputs, threads);
+	}
+
+	/**
+	 * Returns an immutable copy of the trained network, which may be used by
+	 * several threads at once to classify. Snapshots are only available for
+	 * trained networks in double precision, otherwise null is returned.
+	 * 
+	 * @return the snapshot; null if the network has not been trained or
+	 *         computes in single precision
+	 */
+	public MLPSnapshot snapshot() {
+		return mlp != null && !singlePrecision ? mlp.snapshot() : null;
+	}
+
+	/**
+	 * Enables or disables measuring the time spent in each layer during
+	 * training and classification.
+	 * 
+	 * @param profiling
+	 *            true to measure the times
+	 */
+	public void setProfiling(boolean profiling) {
+		initMLP();
+		if (mlp != null)
+			mlp.setProfiling(profiling);
+	}
+
+	/**
+	 * Returns the time spent calculating the output of a layer since
+	 * profiling was enabled.
+	 * 
+	 * @param layer
+	 *            the index of the layer
+	 * @return the time in nanoseconds
+	 */
+	public long getForwardTime(int layer) {
+		return mlp != null ? mlp.getForwardTime(layer) : 0;
+	}
+
+	/**
+	 * Returns the time spent propagating the error and adjusting the weights
+	 * of a layer since profiling was enabled.
+	 * 
+	 * @param layer
+	 *            the index of the layer
+	 * @return the time in nanoseconds
+	 */
+	public long getBackwardTime(int layer) {
+		return mlp != null ? mlp.getBackwardTime(layer) : 0;
 	}
 
 	/**
@@ -167,8 +291,8 @@ public class MLPStub implements Serializable, NeuralNetwork {
 	 * 
 	 */
 	public double[][] getWeights(int layer) {
-		if (mlp != null)
-			return mlp.getWeights(layer);
+		if (isTrained())
+			return network().getWeights(layer);
 		if (layer != 0) {
 			double[][] result = new double[layers[layer]][layers[layer - 1]];
 			for (int i = 0; i < result.length; i++)
@@ -222,7 +346,36 @@ public class MLPStub implements Serializable, NeuralNetwork {
 	 * @return true if this network has been trained; false otherwise
 	 */
 	public boolean isTrained() {
-		return mlp != null;
+		return network() != null;
+	}
+
+	/**
+	 * Returns true if the network computes in single precision.
+	 * 
+	 * @return true if a {@link FloatMLP} is used; false otherwise
+	 */
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	/**
+	 * Selects whether the network computes in single precision using a
+	 * {@link FloatMLP} or in double precision using a {@link MLP}. If
+	 * this.isTrained() returns true, this function does nothing.
+	 * <p>
+	 * A network in single precision is always trained and classifies on the
+	 * calling thread, the number of threads passed to runOnline, runBatch and
+	 * classify is ignored. If an autoencoder is configured, it is trained in
+	 * double precision and the weights are rounded afterwards.
+	 * 
+	 * @param singlePrecision
+	 *            true to compute in single precision
+	 * @return the same as !this.isTrained()
+	 */
+	public boolean setSinglePrecision(boolean singlePrecision) {
+		if (!isTrained())
+			this.singlePrecision = singlePrecision;
+		return !isTrained();
 	}
 
 	/**
@@ -321,23 +474,141 @@ public class MLPStub implements Serializable, NeuralNetwork {
 
 	private void initMLP() {
 		if (!isTrained()) {
-			int[] newLayers = new int[layers.length - 2];
-			double[] newBias = new double[layers.length - 2];
-			for (int i = 0; i < newLayers.length; i++) {
-				newLayers[i] = layers[i + 1];
-				newBias[i] = biases[i + 1];
-			}
 			try {
-				mlp = new MLP(layers[0], layers[layers.length - 1], newLayers,
-						activations, newBias);
-				if (maxIterations > 0 && maxError > 0 && eta > 0)
-					mlp.makeAutoencoder(maxIterations, maxError, eta);
+				boolean autoencoder = maxIterations > 0 && maxError > 0
+						&& eta > 0;
+				if (singlePrecision && autoencoder) {
+					// FloatMLP kann nicht selbst vortrainieren
+					MLP pretrained = createMLP();
+					pretrained.makeAutoencoder(maxIterations, maxError, eta);
+					floatMlp = new FloatMLP(pretrained);
+				} else {
+					createNetwork();
+					if (autoencoder)
+						network().makeAutoencoder(maxIterations, maxError, eta);
+				}
 			} catch (BadConfigException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 
+	/**
+	 * Creates a new network with random weights from the configuration.
+	 * 
+	 * @return the {@link MLP} or {@link FloatMLP}, depending on
+	 *         isSinglePrecision()
+	 * @throws BadConfigException
+	 *             if the configuration is invalid
+	 */
+	MultiLayerPerceptron createNetwork() throws BadConfigException {
+		if (singlePrecision)
+			floatMlp = new FloatMLP(layers[0], layers[layers.length - 1],
+					hiddenLayers(), activations, hiddenBiases());
+		else
+			mlp = createMLP();
+		return network();
+	}
+
+	/**
+	 * Creates a new {@link MLP} with random weights from the configuration.
+	 */
+	private MLP createMLP() throws BadConfigException {
+		return new MLP(layers[0], layers[layers.length - 1], hiddenLayers(),
+				activations, hiddenBiases());
+	}
+
+	/** Returns the sizes of the hidden layers. */
+	private int[] hiddenLayers() {
+		int[] newLayers = new int[layers.length - 2];
+		for (int i = 0; i < newLayers.length; i++)
+			newLayers[i] = layers[i + 1];
+		return newLayers;
+	}
+
+	/** Returns the biases of the hidden layers. */
+	private double[] hiddenBiases() {
+		double[] newBias = new double[layers.length - 2];
+		for (int i = 0; i < newBias.length; i++)
+			newBias[i] = biases[i + 1];
+		return newBias;
+	}
+
+	/**
+	 * Returns the network which is currently used.
+	 * 
+	 * @return the {@link MLP} or {@link FloatMLP}; null if the network has
+	 *         not been trained
+	 */
+	MultiLayerPerceptron network() {
+		return singlePrecision ? floatMlp : mlp;
+	}
+
+	/**
+	 * Returns the activation functions of all layers, including the one of
+	 * the input layer, for {@link MLPFile}.
+	 * 
+	 * @return a copy of the activation functions
+	 */
+	ActivationFunction[] getActivationFunctions() {
+		return activations.clone();
+	}
+
+	/**
+	 * Returns the biases of all layers, including the one of the input layer,
+	 * for {@link MLPFile}.
+	 * 
+	 * @return a copy of the biases
+	 */
+	double[] getBiases() {
+		return biases.clone();
+	}
+
+	/**
+	 * Returns the registered activation functions.
+	 * 
+	 * @return the activation functions, may be null
+	 */
+	List<ActivationFunction> getAllActivations() {
+		return allActivations;
+	}
+
+	/**
+	 * Returns the type of the data the network has been trained with.
+	 * 
+	 * @return the data type; null if it has not been set
+	 */
+	Data.Type getDataType() {
+		return type;
+	}
+
+	/**
+	 * Returns the maximum number of iterations of the autoencoder training.
+	 * 
+	 * @return the iterations; 0 if no autoencoder is used
+	 */
+	int getAutoencoderIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Returns the error at which the autoencoder training stops.
+	 * 
+	 * @return the maximum error
+	 */
+	double getAutoencoderError() {
+		return maxError;
+	}
+
+	/**
+	 * Returns the learning rate of the autoencoder training.
+	 * 
+	 * @return the learning rate
+	 */
+	double getAutoencoderEta() {
+		return eta;
+	}
+
 	public void setAutoencoder(int maxIterations, double maxError, double eta) {
 		this.maxIterations = maxIterations;
 		this.maxError = maxError;
@@ -0,0 +1,213 @@
+package yaprnn.mlp;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * This object classifies with a trained network, whose weights are read directly from a memory-mapped file in the
+ * format of {@link MLPFile}. The weights are not copied into the heap, so opening is fast even for large networks
+ * and several processes using the same file share its pages in the page cache of the operating system. The network
+ * can not be trained. It computes the same results as {@link MLP#classify(double[], double[])}, as the rows of the
+ * weights are copied into the heap one at a time and summed by the same {@link Kernels}, and may be used by several
+ * threads at once. Weights stored in single precision are used for sums in double precision.
+ */
+public class MappedMLP {
+
+	private final String name;
+	// The number of neurons of every layer including the bias neuron
+	private final int[] sizes;
+	private final ActivationFunction[] functions;
+	private final double[] biases;
+	// Views of the weights of every layer, either doubles or floats
+	private final DoubleBuffer[] weights;
+	private final FloatBuffer[] floatWeights;
+
+	// The buffers of every thread
+	private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	/**
+	 * The outputs of all layers and the row of weights in use, which are needed by every thread. The views of the
+	 * weights are duplicated, as reading a row moves their position.
+	 */
+	private class Buffers {
+
+		final double[][] outputs = new double[sizes.length][];
+		final DoubleBuffer[] weights = new DoubleBuffer[sizes.length];
+		final FloatBuffer[] floatWeights = new FloatBuffer[sizes.length];
+		final double[] row;
+		final float[] floatRow;
+
+		Buffers() {
+			int columns = 0;
+			for (int l = 0; l < sizes.length; l++) {
+				outputs[l] = new double[sizes[l]];
+				if (MappedMLP.this.weights[l] != null)
+					weights[l] = MappedMLP.this.weights[l].duplicate();
+				if (MappedMLP.this.floatWeights[l] != null)
+					floatWeights[l] = MappedMLP.this.floatWeights[l].duplicate();
+				if (l > 0)
+					columns = Math.max(columns, sizes[l - 1]);
+			}
+			row = new double[columns];
+			floatRow = new float[columns];
+		}
+	}
+
+	/**
+	 * Maps the given file.
+	 * @param filename The name of a binary MLP file of a trained network.
+	 * @param allActivations The registered activation functions, see {@link yaprnn.Core#getAllActivationFunctions()}.
+	 * @throws IOException if the file can not be read or does not contain a trained network.
+	 */
+	public MappedMLP(String filename, List<ActivationFunction> allActivations) throws IOException {
+		MappedByteBuffer buffer;
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			// The mapping stays valid after closing the file
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		} finally {
+			file.close();
+		}
+
+		MLPFile.Header header = MLPFile.readHeader(buffer, allActivations);
+		if (!header.trained)
+			throw new IOException("The MLP has not been trained");
+		MLPStub stub = header.stub;
+
+		name = stub.getName();
+		int numLayers = stub.getNumLayers();
+		ActivationFunction[] activations = stub.getActivationFunctions();
+		double[] stubBiases = stub.getBiases();
+		sizes = new int[numLayers];
+		functions = new ActivationFunction[numLayers];
+		biases = new double[numLayers];
+		for (int l = 0; l < numLayers; l++) {
+			sizes[l] = stub.getLayerSize(l) + 1;
+			// The layers are configured like in the constructor of MLP
+			if (l == 0 || l == numLayers - 1)
+				functions[l] = activations[l];
+			else {
+				functions[l] = activations[l - 1];
+				biases[l] = stubBiases[l];
+			}
+		}
+
+		weights = new DoubleBuffer[numLayers];
+		floatWeights = new FloatBuffer[numLayers];
+		try {
+			for (int l = 1; l < numLayers; l++) {
+				MLPFile.align(buffer);
+				int count = MLPFile.weightCount(stub, l);
+				ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+				if (stub.isSinglePrecision()) {
+					floatWeights[l] = slice.asFloatBuffer();
+					floatWeights[l].limit(count);
+					buffer.position(buffer.position() + count * 4);
+				} else {
+					weights[l] = slice.asDoubleBuffer();
+					weights[l].limit(count);
+					buffer.position(buffer.position() + count * 8);
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Truncated MLP file");
+		}
+	}
+
+	/**
+	 * Classifies a given input vector.
+	 * @param input The input to classify with a dimension equal to the input neurons.
+	 * @return The output of neurons in percents.
+	 */
+	public double[] classify(double[] input) {
+		return classify(input, new double[sizes[sizes.length - 1]]);
+	}
+
+	/**
+	 * Classifies a given input vector without allocating a new result, see {@link MLP#classify(double[], double[])}.
+	 * @param input The input to classify with a dimension equal to the input neurons.
+	 * @param retVal Receives the output of neurons in percents.
+	 * @return retVal
+	 */
+	public double[] classify(double[] input, double[] retVal) {
+		if (input.length != sizes[0] - 1)
+			throw new IllegalArgumentException("Invalid input dimension: " + input.length);
+
+		Buffers b = buffers.get();
+		double[][] out = b.outputs;
+		System.arraycopy(input, 0, out[0], 0, input.length);
+		out[0][input.length] = 0;
+
+		for (int l = 1; l < sizes.length; l++)
+			forward(l, b, out[l - 1], out[l]);
+
+		return MLP.toPercent(out[sizes.length - 1], 0, retVal);
+	}
+
+	/**
+	 * Returns the name of the network.
+	 * @return The name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of input neurons.
+	 * @return The dimension of the input vectors.
+	 */
+	public int getInputSize() {
+		return sizes[0] - 1;
+	}
+
+	/**
+	 * Returns the number of values returned by {@link #classify(double[])}, which includes the bias neuron of the
+	 * output layer like {@link MLP#classify(double[])}.
+	 * @return The dimension of the output vectors.
+	 */
+	public int getOutputSize() {
+		return sizes[sizes.length - 1];
+	}
+
+	/**
+	 * Calculates the output of a layer like {@link Layer#forward()}.
+	 */
+	private void forward(int l, Buffers b, double[] in, double[] out) {
+		int columns = sizes[l - 1];
+		DoubleBuffer w = b.weights[l];
+		FloatBuffer fw = b.floatWeights[l];
+		double[] row = b.row;
+		Kernels kernels = Kernels.INSTANCE;
+
+		// The rows are stored one after another
+		if (w != null)
+			w.rewind();
+		else
+			fw.rewind();
+		for (int h = 0; h < out.length - 1; h++) {
+			if (w != null)
+				w.get(row, 0, columns);
+			else {
+				fw.get(b.floatRow, 0, columns);
+				for (int i = 0; i < columns; i++)
+					row[i] = b.floatRow[i];
+			}
+			out[h] = kernels.dot(in, 0, row, 0, columns);
+		}
+
+		functions[l].compute(out, out, 0, out.length - 1);
+		out[out.length - 1] = biases[l];
+	}
+}
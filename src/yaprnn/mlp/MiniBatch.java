@@ -0,0 +1,252 @@
+package yaprnn.mlp;
+
+import java.util.Arrays;
+
+import yaprnn.dvv.Data;
+
+/**
+ * This object holds a mini-batch of input vectors as a matrix and computes the forward and backward pass of a whole
+ * {@link MLP} for all of them at once. Every matrix is stored row-major with one row per sample, the products with
+ * the weight matrices are computed blockwise so a block of weights stays in the cache while all samples pass it.
+ * The sums are built in the same order as in {@link Layer}, so the results equal those of the single-sample path.
+ */
+class MiniBatch {
+
+	/** Number of weight rows which are kept in the cache together. */
+	private static final int BLOCK_SIZE = 16;
+
+	private final Layer[] layer;
+	private final int capacity;
+	private int rows;
+
+	// [l] holds the output of layer l for every sample
+	private final double[][] outputs;
+	// [l] holds the summed input of layer l for every sample
+	private final double[][] layerInputs;
+	// [l] holds the error of layer l for every sample
+	private final double[][] errors;
+	// Receives the derivatives of one layer for every sample
+	private final double[] derivations;
+
+	/**
+	 * Constructor; Allocates the matrices for the given layers.
+	 * @param layer The layers of the network, the first one is the input layer.
+	 * @param capacity The maximum number of samples in the batch.
+	 */
+	MiniBatch(Layer[] layer, int capacity) {
+		this.layer = layer;
+		this.capacity = capacity;
+		outputs = new double[layer.length][];
+		layerInputs = new double[layer.length][];
+		errors = new double[layer.length][];
+		int maxSize = 0;
+		for (int l = 0; l < layer.length; l++) {
+			maxSize = Math.max(maxSize, layer[l].getSize());
+			outputs[l] = new double[capacity * layer[l].getSize()];
+			if (l > 0) {
+				layerInputs[l] = new double[capacity * layer[l].getSize()];
+				errors[l] = new double[capacity * layer[l].getSize()];
+			}
+		}
+		derivations = new double[capacity * maxSize];
+	}
+
+	/**
+	 * Returns the maximum number of samples in the batch.
+	 * @return The capacity.
+	 */
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the input data of the batch.
+	 * @param data The samples to take the input data from.
+	 * @param from Index of the first sample.
+	 * @param to Index after the last sample, at most capacity samples are used.
+	 */
+	void setInput(Data[] data, int from, int to) {
+		rows = to - from;
+		int size = layer[0].getSize();
+		double[] in = outputs[0];
+		for (int r = 0; r < rows; r++) {
+			Data sample = data[from + r];
+			if (sample.getDataLength() != size - 1) {
+				System.out.println("Can't set input data!");
+				continue;
+			}
+			sample.copyData(in, r * size);
+			in[r * size + size - 1] = 0;
+		}
+	}
+
+	/**
+	 * Sets the input vectors of the batch.
+	 * @param inputs The input vectors.
+	 * @param from Index of the first vector.
+	 * @param to Index after the last vector, at most capacity vectors are used.
+	 */
+	void setInput(double[][] inputs, int from, int to) {
+		rows = to - from;
+		for (int r = 0; r < rows; r++)
+			setInput(r, inputs[from + r]);
+	}
+
+	private void setInput(int r, double[] input) {
+		int size = layer[0].getSize();
+		if (input.length != size - 1) {
+			System.out.println("Can't set input data!");
+			return;
+		}
+		double[] in = outputs[0];
+		System.arraycopy(input, 0, in, r * size, input.length);
+		in[r * size + size - 1] = 0;
+	}
+
+	/**
+	 * Calculates the outputs of all layers for every sample of the batch.
+	 * @return The outputs of the output layer, one row per sample.
+	 */
+	double[] forward() {
+		Kernels kernels = Kernels.INSTANCE;
+		for (int l = 1; l < layer.length; l++) {
+			Layer current = layer[l];
+			ActivationFunction function = current.getActivationFunction();
+			double[] weights = current.weights;
+			double[] in = outputs[l - 1];
+			double[] out = outputs[l];
+			double[] sums = layerInputs[l];
+			int columns = current.columns;
+			int size = current.getSize();
+
+			for (int h0 = 0; h0 < size - 1; h0 += BLOCK_SIZE) {
+				int h1 = Math.min(h0 + BLOCK_SIZE, size - 1);
+				for (int r = 0; r < rows; r++) {
+					int inRow = r * columns;
+					int outRow = r * size;
+					for (int h = h0, row = h0 * columns; h < h1; h++, row += columns)
+						sums[outRow + h] = kernels.dot(in, inRow, weights, row, columns);
+
+					function.compute(sums, out, outRow + h0, outRow + h1);
+				}
+			}
+
+			for (int r = 0; r < rows; r++)
+				out[r * size + size - 1] = current.getBias();
+		}
+		return outputs[layer.length - 1];
+	}
+
+	/**
+	 * Converts the outputs of the output layer into percents like {@link MLP#classify(double[], double[])}.
+	 * {@link #forward()} has to be called before.
+	 * @param result Receives the percents, result[from + r] has to be allocated with the size of the output layer.
+	 * @param from Index of the first result.
+	 */
+	void classify(double[][] result, int from) {
+		double[] out = outputs[layer.length - 1];
+		int size = layer[layer.length - 1].getSize();
+		for (int r = 0; r < rows; r++)
+			MLP.toPercent(out, r * size, result[from + r]);
+	}
+
+	/**
+	 * Calculates the error of the output layer for every sample like {@link MLP#runOnline(java.util.Collection, double, double)}.
+	 * {@link #forward()} has to be called before.
+	 * @param data The samples to take the targets from.
+	 * @param from Index of the first sample.
+	 */
+	void outputError(Data[] data, int from) {
+		int last = layer.length - 1;
+		ActivationFunction outAVF = layer[last].getActivationFunction();
+		int size = layer[last].getSize();
+		double[] out = outputs[last];
+		double[] sums = layerInputs[last];
+		double[] error = errors[last];
+
+		derivations(outAVF, out, sums, size);
+		for (int r = 0; r < rows; r++) {
+			int target = data[from + r].getTarget();
+			for (int h = 0, k = r * size; h < size; h++, k++)
+				if (h == target)
+					error[k] = (out[k] - 1) * derivations[k];
+				else
+					error[k] = out[k] * derivations[k];
+		}
+	}
+
+	/**
+	 * Propagates the errors of the output layer back through the network and adds the weight modifications of all
+	 * samples to the given gradients. {@link #outputError(Data[], int)} has to be called before.
+	 * @param gradients Receives the weight modifications, gradients[l] has the layout of the weights of layer l.
+	 */
+	void backPropagate(double[][] gradients) {
+		Kernels kernels = Kernels.INSTANCE;
+		for (int l = layer.length - 1; l > 0; l--) {
+			Layer current = layer[l];
+			double[] error = errors[l];
+			double[] in = outputs[l - 1];
+			double[] gradient = gradients[l];
+			int columns = current.columns;
+			int size = current.getSize();
+
+			// alter gradient
+			for (int h0 = 0; h0 < size; h0 += BLOCK_SIZE) {
+				int h1 = Math.min(h0 + BLOCK_SIZE, size);
+				for (int r = 0; r < rows; r++) {
+					int inRow = r * columns;
+					for (int h = h0, row = h0 * columns; h < h1; h++, row += columns)
+						kernels.axpy(error[r * size + h], in, inRow, gradient, row, columns);
+				}
+			}
+
+			// The error of the input layer is never used
+			if (l > 1)
+				propagateError(l);
+		}
+	}
+
+	/**
+	 * Calculates the error of the layer before the given one for every sample.
+	 * @param l Index of the layer whose error is known.
+	 */
+	private void propagateError(int l) {
+		Kernels kernels = Kernels.INSTANCE;
+		Layer current = layer[l];
+		ActivationFunction function = layer[l - 1].getActivationFunction();
+		double[] preOut = outputs[l - 1];
+		double[] weights = current.weights;
+		double[] error = errors[l];
+		double[] preError = errors[l - 1];
+		double[] preSums = layerInputs[l - 1];
+		int columns = current.columns;
+		int size = current.getSize();
+
+		for (int r0 = 0; r0 < rows; r0 += BLOCK_SIZE) {
+			int r1 = Math.min(r0 + BLOCK_SIZE, rows);
+			Arrays.fill(preError, r0 * columns, r1 * columns, 0);
+			for (int h = 0, row = 0; h < size; h++, row += columns)
+				for (int r = r0; r < r1; r++)
+					kernels.axpy(error[r * size + h], weights, row, preError, r * columns, columns);
+		}
+
+		derivations(function, preOut, preSums, columns);
+		for (int k = 0; k < rows * columns; k++)
+			preError[k] *= derivations[k];
+	}
+
+	/**
+	 * Calculates the derivatives of the activation function of one layer for every sample like
+	 * {@link Layer#derivations()} and stores them with the layout of the layer's outputs.
+	 * @param function The activation function of the layer.
+	 * @param out The outputs of the layer.
+	 * @param sums The summed inputs of the layer.
+	 * @param size The number of neurons of the layer.
+	 */
+	private void derivations(ActivationFunction function, double[] out, double[] sums, int size) {
+		for (int r = 0, row = 0; r < rows; r++, row += size) {
+			function.derivationFromOutput(out, derivations, row, row + size - 1);
+			derivations[row + size - 1] = function.derivation(sums[row + size - 1]);
+		}
+	}
+}
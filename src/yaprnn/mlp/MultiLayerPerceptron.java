@@ -0,0 +1,105 @@
+package yaprnn.mlp;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import yaprnn.dvv.Data;
+
+/**
+ * This interface represents a trainable multilayer perceptron and is implemented by {@link MLP}, which computes in
+ * double precision, and {@link FloatMLP}, which computes in single precision. It is used by {@link MLPStub}.
+ */
+public interface MultiLayerPerceptron extends Serializable {
+
+	/**
+	 * Trains the network as autoencoder.
+	 * @param maxIterations Break condition for the training. Training will stop if maxIterations is reached.
+	 * @param maxError If the net's error falls below this border, training will be aborted.
+	 * @param eta the learning rate
+	 * @return false if training failes, otherwise true.
+	 */
+	public boolean makeAutoencoder(int maxIterations, double maxError, double eta);
+
+	/**
+	 * Performs the online calculation with the network.
+	 * @param dataCollection A collection of the type {@link Data} with input and target values.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 * @return The training error computed by {@link #runTest(Collection)}.
+	 */
+	public double runOnline(Collection<Data> dataCollection, double eta, double momentum);
+
+	/**
+	 * Performs the online calculation with the network using several threads.
+	 * @param dataCollection A collection of the type {@link Data} with input and target values.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 * @param threads The number of threads.
+	 * @return The training error computed by {@link #runTest(Collection)}.
+	 */
+	public double runOnline(Collection<Data> dataCollection, double eta, double momentum, int threads);
+
+	/**
+	 * Performs the batch calculation with the network.
+	 * @param dataCollection A collection of the type {@link Data} with input and target values.
+	 * @param batchSize The number of samples after which the weights are adjusted.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 * @return The training error computed by {@link #runTest(Collection)}.
+	 */
+	public double runBatch(Collection<Data> dataCollection, int batchSize, double eta, double momentum);
+
+	/**
+	 * Performs the batch calculation with the network using several threads.
+	 * @param dataCollection A collection of the type {@link Data} with input and target values.
+	 * @param batchSize The number of samples after which the weights are adjusted.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 * @param threads The number of threads.
+	 * @return The training error computed by {@link #runTest(Collection)}.
+	 */
+	public double runBatch(Collection<Data> dataCollection, int batchSize, double eta, double momentum, int threads);
+
+	/**
+	 * Performs a test using delivered data.
+	 * @param dataCollection The data, tu be used for the test.
+	 * @return The test error. If an error occurse, returns 0.
+	 */
+	public double runTest(Collection<Data> dataCollection);
+
+	/**
+	 * Classifies a given input vector.
+	 * @param input The input to classify with a dimension equal to the input neurons.
+	 * @return The output of neurons in percents.
+	 */
+	public double[] classify(double[] input);
+
+	/**
+	 * Classifies a given input vector without allocating a new result.
+	 * @param input The input to classify with a dimension equal to the input neurons.
+	 * @param retVal Receives the output of neurons in percents.
+	 * @return retVal
+	 */
+	public double[] classify(double[] input, double[] retVal);
+
+	/**
+	 * Classifies many input vectors at once.
+	 * @param inputs The inputs to classify with a dimension equal to the input neurons.
+	 * @param threads The number of threads.
+	 * @return The output of neurons in percents for every input.
+	 */
+	public double[][] classify(double[][] inputs, int threads);
+
+	/**
+	 * Returns a copy of the weight matrix of the given layer.
+	 * @param layer The layer's index.
+	 * @return The layer's weight matrix, null for the input layer.
+	 */
+	public double[][] getWeights(int layer);
+
+	/**
+	 * Resets the integrated iteration-counter.
+	 */
+	public void resetIterations();
+
+}
@@ -0,0 +1,168 @@
+package yaprnn.mlp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import yaprnn.dvv.Data;
+
+/**
+ * This object splits a mini-batch into one part per thread and lets every thread compute the forward and backward
+ * pass of its part with an own {@link MiniBatch} and own gradients. The weights are only read while the threads are
+ * running. Afterwards the gradients of all threads are added up in a fixed order, so the result does not depend on
+ * the scheduling and only differs from the sequential result by rounding.
+ */
+class ParallelBatch {
+
+	private final Layer[] layer;
+	private final ForkJoinPool pool;
+	private final MiniBatch[] workers;
+	// [w][l] holds the gradient of layer l computed by worker w
+	private final double[][][] gradients;
+
+	/**
+	 * Constructor; Allocates the mini-batches and gradients of all threads.
+	 * @param layer The layers of the network, the first one is the input layer.
+	 * @param capacity The maximum number of samples of one thread.
+	 * @param threads The number of threads.
+	 */
+	ParallelBatch(Layer[] layer, int capacity, int threads) {
+		this.layer = layer;
+		this.pool = new ForkJoinPool(threads);
+		workers = new MiniBatch[threads];
+		gradients = new double[threads][layer.length][];
+		for (int w = 0; w < threads; w++) {
+			workers[w] = new MiniBatch(layer, capacity);
+			for (int l = 1; l < layer.length; l++)
+				gradients[w][l] = new double[layer[l].weights.length];
+		}
+	}
+
+	/**
+	 * Returns the maximum number of samples which can be processed at once.
+	 * @return The capacity of all threads together.
+	 */
+	int getCapacity() {
+		return workers.length * workers[0].getCapacity();
+	}
+
+	/**
+	 * Returns the number of threads.
+	 * @return The number of threads.
+	 */
+	int getThreads() {
+		return workers.length;
+	}
+
+	/**
+	 * Calculates the weight modifications of the given samples in parallel and adds them to the given gradients.
+	 * @param data The samples.
+	 * @param from Index of the first sample.
+	 * @param to Index after the last sample, at most {@link #getCapacity()} samples are used.
+	 * @param target Receives the weight modifications, target[l] has the layout of the weights of layer l.
+	 */
+	void backPropagate(final Data[] data, int from, int to, final double[][] target) {
+		int share = (to - from + workers.length - 1) / workers.length;
+
+		final List<RecursiveAction> shards = new ArrayList<RecursiveAction>(workers.length);
+		for (int w = 0, start = from; start < to; w++, start += share) {
+			final MiniBatch worker = workers[w];
+			final double[][] gradient = gradients[w];
+			final int first = start;
+			final int last = Math.min(start + share, to);
+			shards.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					worker.setInput(data, first, last);
+					worker.forward();
+					worker.outputError(data, first);
+					worker.backPropagate(gradient);
+				}
+			});
+		}
+		final int used = shards.size();
+
+		// Every thread adds up one range of the gradients of all layers
+		final List<RecursiveAction> sums = new ArrayList<RecursiveAction>(workers.length);
+		for (int w = 0; w < workers.length; w++) {
+			final int part = w;
+			sums.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					for (int l = 1; l < layer.length; l++) {
+						double[] sum = target[l];
+						int length = sum.length;
+						int start = (int) ((long) length * part / workers.length);
+						int end = (int) ((long) length * (part + 1) / workers.length);
+						for (int u = 0; u < used; u++) {
+							double[] gradient = gradients[u][l];
+							for (int k = start; k < end; k++) {
+								sum[k] += gradient[k];
+								gradient[k] = 0;
+							}
+						}
+					}
+				}
+			});
+		}
+
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(shards);
+				invokeAll(sums);
+			}
+		});
+	}
+
+	/**
+	 * Classifies the given input vectors in parallel, see {@link MiniBatch#classify(double[][], int)}.
+	 * @param inputs The input vectors.
+	 * @param from Index of the first vector.
+	 * @param to Index after the last vector, at most {@link #getCapacity()} vectors are used.
+	 * @param result Receives the percents of every vector.
+	 */
+	void classify(final double[][] inputs, int from, int to, final double[][] result) {
+		int share = (to - from + workers.length - 1) / workers.length;
+
+		final List<RecursiveAction> shards = new ArrayList<RecursiveAction>(workers.length);
+		for (int w = 0, start = from; start < to; w++, start += share) {
+			final MiniBatch worker = workers[w];
+			final int first = start;
+			final int last = Math.min(start + share, to);
+			shards.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					worker.setInput(inputs, first, last);
+					worker.forward();
+					worker.classify(result, first);
+				}
+			});
+		}
+
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(shards);
+			}
+		});
+	}
+
+	/**
+	 * Stops the threads.
+	 */
+	void shutdown() {
+		pool.shutdown();
+	}
+}
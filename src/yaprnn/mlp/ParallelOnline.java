@@ -0,0 +1,102 @@
+package yaprnn.mlp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import yaprnn.dvv.Data;
+
+/**
+ * This object performs the online training with several threads at once. Every thread trains with its own part of
+ * the samples and adjusts the shared weights after every sample without any locking (Hogwild). The threads may
+ * therefore read weights which are being changed by another thread at the same time; as every single adjustment
+ * is small, this hardly disturbs the training. The result depends on the scheduling of the threads.
+ */
+class ParallelOnline {
+
+	private final Layer[] layer;
+	private final ForkJoinPool pool;
+	private final MiniBatch[] workers;
+	// [w][l] holds the gradient of layer l computed by worker w
+	private final double[][][] gradients;
+
+	/**
+	 * Constructor; Allocates the buffers of all threads.
+	 * @param layer The layers of the network, the first one is the input layer.
+	 * @param threads The number of threads.
+	 */
+	ParallelOnline(Layer[] layer, int threads) {
+		this.layer = layer;
+		this.pool = new ForkJoinPool(threads);
+		workers = new MiniBatch[threads];
+		gradients = new double[threads][layer.length][];
+		for (int w = 0; w < threads; w++) {
+			workers[w] = new MiniBatch(layer, 1);
+			for (int l = 1; l < layer.length; l++)
+				gradients[w][l] = new double[layer[l].weights.length];
+		}
+	}
+
+	/**
+	 * Returns the number of threads.
+	 * @return The number of threads.
+	 */
+	int getThreads() {
+		return workers.length;
+	}
+
+	/**
+	 * Trains the network with the given samples, every thread takes an own contiguous part of them.
+	 * @param data The samples.
+	 * @param eta The learning rate to be used.
+	 * @param momentum The momentum to be used, no momentum is used if it is 0.
+	 */
+	void train(final Data[] data, final double eta, final double momentum) {
+		int share = (data.length + workers.length - 1) / workers.length;
+
+		final List<RecursiveAction> shards = new ArrayList<RecursiveAction>(workers.length);
+		for (int w = 0, start = 0; start < data.length; w++, start += share) {
+			final MiniBatch worker = workers[w];
+			final double[][] gradient = gradients[w];
+			final int first = start;
+			final int last = Math.min(start + share, data.length);
+			shards.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					for (int i = first; i < last; i++) {
+						worker.setInput(data, i, i + 1);
+						worker.forward();
+						worker.outputError(data, i);
+						worker.backPropagate(gradient);
+
+						// Adjust the shared weights
+						for (int l = layer.length - 1; l > 0; l--)
+							if (momentum > 0)
+								layer[l].updateWeights(gradient[l], eta, momentum);
+							else
+								layer[l].updateWeights(gradient[l], eta);
+					}
+				}
+			});
+		}
+
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(shards);
+			}
+		});
+	}
+
+	/**
+	 * Stops the threads.
+	 */
+	void shutdown() {
+		pool.shutdown();
+	}
+}
@@ -26,6 +26,42 @@ public class Sigmoid implements ActivationFunction{
 		return e / (e2 * e2);
 	}
 
+	/**
+	 * Computes the function's derivation from the function's value y.
+	 * @return the function's derivation, y * (1 - y).
+	 */
+	public double derivationFromOutput(double y) {
+		return y * (1 - y);
+	}
+
+	/**
+	 * Computes the function's values for a range of parameters, see {@link ActivationFunction#compute(double[], double[], int, int)}.
+	 */
+	public void compute(double[] x, double[] y, int from, int to) {
+		for (int i = from; i < to; i++)
+			y[i] = 1.0 / (1.0 + Math.exp(-x[i]));
+	}
+
+	/**
+	 * Computes the function's derivation for a range of parameters, see {@link ActivationFunction#derivation(double[], double[], int, int)}.
+	 */
+	public void derivation(double[] x, double[] result, int from, int to) {
+		for (int i = from; i < to; i++) {
+			double e = Math.exp(x[i]);
+			double e2 = e + 1;
+			result[i] = e / (e2 * e2);
+		}
+	}
+
+	/**
+	 * Computes the function's derivation for a range of function values, see
+	 * {@link ActivationFunction#derivationFromOutput(double[], double[], int, int)}.
+	 */
+	public void derivationFromOutput(double[] y, double[] result, int from, int to) {
+		for (int i = from; i < to; i++)
+			result[i] = y[i] * (1 - y[i]);
+	}
+
 	/**
 	 * The function's string presentation.
 	 * @return the name
@@ -0,0 +1,121 @@
+package yaprnn.mlp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+import yaprnn.dvv.Data;
+
+/**
+ * SyntheticData is a preprocessed data item with random values, so the
+ * tests and benchmarks do not depend on any files.
+ */
+public class SyntheticData extends Data {
+
+	private final double[] data;
+	private final int target;
+
+	/**
+	 * Constructs a data item with the specified values.
+	 *
+	 * @param data
+	 *            the preprocessed data
+	 * @param target
+	 *            the target class
+	 */
+	public SyntheticData(double[] data, int target) {
+		this.data = data;
+		this.target = target;
+		setTraining();
+	}
+
+	/**
+	 * Creates a collection of random data items. The same arguments always
+	 * create the same data.
+	 *
+	 * @param size
+	 *            the number of data items
+	 * @param dimension
+	 *            the size of the input vectors
+	 * @param classes
+	 *            the number of target classes
+	 * @return the data items
+	 */
+	public static Collection<Data> create(int size, int dimension, int classes) {
+		Random random = new Random(size * 31 + dimension);
+		Collection<Data> result = new ArrayList<Data>(size);
+		for (int i = 0; i < size; i++) {
+			double[] values = new double[dimension];
+			for (int j = 0; j < dimension; j++)
+				values[j] = random.nextDouble() * 2 - 1;
+			result.add(new SyntheticData(values, random.nextInt(classes)));
+		}
+		return result;
+	}
+
+	@Override
+	public double[] getData() {
+		return data;
+	}
+
+	@Override
+	public String getName() {
+		return "synthetic";
+	}
+
+	@Override
+	public String getLabel() {
+		return "" + target;
+	}
+
+	@Override
+	public int getTarget() {
+		return target;
+	}
+
+	@Override
+	public String getFilename() {
+		return "synthetic";
+	}
+
+	@Override
+	public String getPath() {
+		return "synthetic";
+	}
+
+	@Override
+	public String getSubsamplingOptions() {
+		return "";
+	}
+
+	@Override
+	public String getLabelFromTarget(int target) {
+		return "" + target;
+	}
+
+	@Override
+	public void subsample(int resolution, double overlap,
+			ActivationFunction function) {
+	}
+
+	@Override
+	public boolean isAudio() {
+		return false;
+	}
+
+	@Override
+	public boolean isPicture() {
+		return true;
+	}
+
+	@Override
+	public Object previewRawData() {
+		return null;
+	}
+
+	@Override
+	public Object previewSubsampledData(int resolution, double overlap) {
+		return null;
+	}
+
+}
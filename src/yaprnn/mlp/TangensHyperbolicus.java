@@ -23,6 +23,41 @@ public class TangensHyperbolicus implements ActivationFunction {
 		return 1 - v * v;
 	}
 
+	/**
+	 * Computes the function's derivation from the function's value y.
+	 * @return the function's derivation, 1 - y * y.
+	 */
+	public double derivationFromOutput(double y) {
+		return 1 - y * y;
+	}
+
+	/**
+	 * Computes the function's values for a range of parameters, see {@link ActivationFunction#compute(double[], double[], int, int)}.
+	 */
+	public void compute(double[] x, double[] y, int from, int to) {
+		for (int i = from; i < to; i++)
+			y[i] = Math.tanh(x[i]);
+	}
+
+	/**
+	 * Computes the function's derivation for a range of parameters, see {@link ActivationFunction#derivation(double[], double[], int, int)}.
+	 */
+	public void derivation(double[] x, double[] result, int from, int to) {
+		for (int i = from; i < to; i++) {
+			double v = Math.tanh(x[i]);
+			result[i] = 1 - v * v;
+		}
+	}
+
+	/**
+	 * Computes the function's derivation for a range of function values, see
+	 * {@link ActivationFunction#derivationFromOutput(double[], double[], int, int)}.
+	 */
+	public void derivationFromOutput(double[] y, double[] result, int from, int to) {
+		for (int i = from; i < to; i++)
+			result[i] = 1 - y[i] * y[i];
+	}
+
 	/**
 	 * The function's string presentation.
 	 * @return the name
@@ -1,11 +1,22 @@
 package yaprnn.mlp;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import yaprnn.dvv.Data;
 
 public class TestMLP {
 	protected static Layer[] layer;
 
 	public static void main(String[] args) {
+		testAllocation();
+		testInterpolation();
+		testSnapshot();
+
 		System.out.print("Erstelle neues MLP...");
 		int[] hL = {2};
 		ActivationFunction[] f = new ActivationFunction[3];
@@ -259,4 +270,116 @@ public class TestMLP {
 		return buffer.toString();
 	}
 
+	/** Checks that online training does not allocate memory per sample. */
+	public static void testAllocation() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!bean.isThreadAllocatedMemorySupported()) {
+			System.out.println("Allocation test skipped");
+			return;
+		}
+		bean.setThreadAllocatedMemoryEnabled(true);
+
+		MLP mlp;
+		try {
+			ActivationFunction[] f = new ActivationFunction[4];
+			Arrays.fill(f, new TangensHyperbolicus());
+			mlp = new MLP(100, 10, new int[] {20, 20}, f, new double[] {1, 1});
+		} catch (BadConfigException e) {
+			e.printStackTrace();
+			return;
+		}
+		Collection<Data> small = SyntheticData.create(1000, 100, 10);
+		Collection<Data> large = SyntheticData.create(2000, 100, 10);
+
+		// Warm up
+		for (int i = 0; i < 10; i++)
+			mlp.runOnline(large, 0.01, 0.5);
+
+		long id = Thread.currentThread().getId();
+		long before = bean.getThreadAllocatedBytes(id);
+		mlp.runOnline(small, 0.01, 0.5);
+		long smallBytes = bean.getThreadAllocatedBytes(id) - before;
+
+		before = bean.getThreadAllocatedBytes(id);
+		mlp.runOnline(large, 0.01, 0.5);
+		long largeBytes = bean.getThreadAllocatedBytes(id) - before;
+
+		// The additional 1000 samples must not allocate anything
+		if (largeBytes - smallBytes > 0)
+			System.out.println("Error in MLP-Test allocation: " + (largeBytes - smallBytes) + " bytes for 1000 samples");
+	}
+
+	/**
+	 * Checks that a snapshot used by several threads at once classifies exactly like the trained network, and that
+	 * further training does not change it.
+	 */
+	public static void testSnapshot() {
+		List<ActivationFunction> functions = new ArrayList<ActivationFunction>();
+		functions.add(new TangensHyperbolicus());
+		MLPStub stub = new MLPStub("snapshot", 4, 20, 0, 1, functions);
+		stub.setNumInputNeurons(100);
+		stub.setNumOutputNeurons(10);
+		if (stub.snapshot() != null)
+			System.out.println("Error in MLP-Test snapshot: untrained network");
+
+		Collection<Data> data = SyntheticData.create(500, 100, 10);
+		stub.runBatch(data, 10, 0.01, 0.5);
+		final MLPSnapshot snapshot = stub.snapshot();
+		final double[][] inputs = new double[data.size()][];
+		final double[][] expected = new double[data.size()][];
+		int n = 0;
+		for (Data d : data) {
+			inputs[n] = d.getData();
+			expected[n] = stub.classify(inputs[n]);
+			n++;
+		}
+
+		final AtomicInteger errors = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int round = 0; round < 20; round++)
+						for (int i = 0; i < inputs.length; i++) {
+							int k = (i + offset * 61) % inputs.length;
+							if (!Arrays.equals(snapshot.classify(inputs[k]), expected[k]))
+								errors.incrementAndGet();
+						}
+				}
+			};
+			threads[t].start();
+		}
+		// The network keeps training while the threads classify
+		stub.runBatch(data, 10, 0.01, 0.5);
+		for (Thread thread : threads)
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		if (errors.get() > 0)
+			System.out.println("Error in MLP-Test snapshot: " + errors.get() + " results differ");
+	}
+
+	/**
+	 * Tests that the interpolated functions stay close to the functions they approximate, inside and outside of
+	 * the table's range.
+	 */
+	public static void testInterpolation() {
+		ActivationFunction[] functions = { new TangensHyperbolicus(), new Sigmoid() };
+		for (ActivationFunction function : functions) {
+			InterpolatedFunction fast = new InterpolatedFunction(function, -8, 8, 4096);
+			double maxError = fast.getMaxError();
+			if (maxError > 2e-6)
+				System.out.println("Error in MLP-Test interpolation: " + function + " max error " + maxError);
+
+			for (double x = -10; x <= 10; x += 0.001)
+				if (Math.abs(fast.compute(x) - function.compute(x)) > maxError * 1.01) {
+					System.out.println("Error in MLP-Test interpolation: " + function + " at " + x);
+					break;
+				}
+		}
+	}
+
 }
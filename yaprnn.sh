@@ -1 +1,3 @@
-java -Xmx512m -jar dist/yaprnn.jar
+# Die SIMD-Kernel brauchen das Vector-API (ab Java 16), sonst wird ohne gerechnet
+java --add-modules jdk.incubator.vector -version >/dev/null 2>&1 && SIMD="--add-modules jdk.incubator.vector"
+java -Xmx512m -XX:MaxDirectMemorySize=1024m $SIMD -jar dist/yaprnn.jar
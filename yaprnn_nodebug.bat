@@ -1 +1,5 @@
-start /B javaw -Xmx512m -jar dist\yaprnn_final.jar
+rem Die SIMD-Kernel brauchen das Vector-API (ab Java 16), sonst wird ohne gerechnet
+setlocal
+set SIMD=
+java --add-modules jdk.incubator.vector -version >nul 2>&1 && set SIMD=--add-modules jdk.incubator.vector
+start /B javaw -Xmx512m -XX:MaxDirectMemorySize=1024m %SIMD% -jar dist\yaprnn_final.jar